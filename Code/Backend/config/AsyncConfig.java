@@ -0,0 +1,57 @@
+package com.example.lowflightzone.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    /**
+     * Виртуальные потоки для воркеров outbox и push-отправок: отправка почти всё время ждёт сеть.
+     * Параллелизм ограничивает семафор в PushFanOut, а не размер пула.
+     */
+    @Bean(name = "pushExecutor", destroyMethod = "close")
+    public ExecutorService pushExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("push-", 0).factory());
+    }
+
+    /**
+     * Пул для {@code @Scheduled}: по умолчанию Spring выполняет все задачи в одном потоке,
+     * и полный пересчёт задерживал бы подбор изменений с других узлов и сверку подписок.
+     * Аренды продлеваются в своём потоке (SchedulerLeases).
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduler.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+
+    /**
+     * Пул для полного пересчёта рейсов по диапазонам id. Каждый поток держит соединение
+     * на время своей транзакции — параллелизм не должен превышать размер пула БД.
+     */
+    @Bean(name = "recalculationExecutor")
+    public Executor recalculationExecutor(@Value("${flights.recalc.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, parallelism));
+        executor.setMaxPoolSize(Math.max(1, parallelism));
+        executor.setThreadNamePrefix("recalc-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
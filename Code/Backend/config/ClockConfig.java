@@ -0,0 +1,16 @@
+package com.example.lowflightzone.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class ClockConfig {
+
+    /** Часы для пересчёта статусов: подменяются при отладке переходов */
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
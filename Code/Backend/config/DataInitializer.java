@@ -1,9 +1,11 @@
 package com.example.lowflightzone.config;
 
+import com.example.lowflightzone.dao.FlightDao;
 import com.example.lowflightzone.entity.Airport;
 import com.example.lowflightzone.entity.Flight;
 import com.example.lowflightzone.repositories.AirportRepository;
 import com.example.lowflightzone.repositories.FlightRepository;
+import com.example.lowflightzone.services.StartupPhases;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -19,12 +21,17 @@ public class DataInitializer implements CommandLineRunner {
 
     private final AirportRepository airportRepository;
     private final FlightRepository flightRepository;
+    private final FlightDao flightDao;
+    private final StartupPhases startupPhases;
 
     @Override
     public void run(String... args) {
         log.info("🚀 Запуск инициализации тестовых данных...");
-        initializeAirports();
-        generateTestFlightsIfEmpty();
+        startupPhases.time("dataInitializer", () -> {
+            flightDao.ensureCollectionVersion();
+            initializeAirports();
+            generateTestFlightsIfEmpty();
+        });
     }
 
     /**
@@ -113,7 +120,7 @@ public class DataInitializer implements CommandLineRunner {
             newFlights.add(flight);
         }
 
-        flightRepository.saveAll(newFlights);
+        flightDao.saveAll(newFlights);
         log.info("✅ Сгенерировано {} рейсов", newFlights.size());
     }
 
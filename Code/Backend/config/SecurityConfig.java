@@ -33,6 +33,8 @@ public class SecurityConfig {
                         .requestMatchers(
                                 "/auth/**",
                                 "/health",
+                                "/health/ready",
+                                "/health/startup",
                                 "/swagger-ui/**",
                                 "/api-docs/**",
                                 "/api/external/flight/**" // <-- вот это ключевое!
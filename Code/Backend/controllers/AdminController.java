@@ -0,0 +1,81 @@
+package com.example.lowflightzone.controllers;
+
+import com.example.lowflightzone.services.FlightDtoCache;
+import com.example.lowflightzone.services.FlightRecalculationService;
+import com.example.lowflightzone.services.FlightTransitionScheduler;
+import com.example.lowflightzone.services.NotificationOutboxWorker;
+import com.example.lowflightzone.services.PushFanOut;
+import com.example.lowflightzone.services.SchedulerLeases;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/admin")
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Admin Controller", description = "Служебные метрики и операции")
+public class AdminController {
+
+    private final FlightDtoCache flightDtoCache;
+    private final FlightTransitionScheduler flightTransitionScheduler;
+    private final FlightRecalculationService flightRecalculationService;
+    private final SchedulerLeases schedulerLeases;
+    private final PushFanOut pushFanOut;
+    private final NotificationOutboxWorker notificationOutboxWorker;
+
+    @Operation(summary = "Статистика кэша рейсов (попадания, промахи, вытеснения)")
+    @GetMapping("/cache/flights")
+    public ResponseEntity<Map<String, Object>> getFlightCacheStats() {
+        return ResponseEntity.ok(flightDtoCache.stats());
+    }
+
+    @Operation(summary = "Сбросить кэш рейсов")
+    @DeleteMapping("/cache/flights")
+    public ResponseEntity<Void> clearFlightCache() {
+        flightDtoCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(summary = "Очередь переходов статусов рейсов (размер, ближайший переход)")
+    @GetMapping("/transitions")
+    public ResponseEntity<Map<String, Object>> getTransitionStats() {
+        return ResponseEntity.ok(flightTransitionScheduler.stats());
+    }
+
+    @Operation(summary = "Ход текущего или последнего полного пересчёта рейсов")
+    @GetMapping("/recalculation")
+    public ResponseEntity<Map<String, Object>> getRecalculationProgress() {
+        return ResponseEntity.ok(flightRecalculationService.progress());
+    }
+
+    @Operation(summary = "История последних полных пересчётов рейсов (длительность, БД/вычисления, изменения по статусам)")
+    @GetMapping("/recalculation/runs")
+    public ResponseEntity<List<Map<String, Object>>> getRecalculationRuns() {
+        return ResponseEntity.ok(flightRecalculationService.recentRuns());
+    }
+
+    @Operation(summary = "Аренды фоновых задач этого узла (лидерство, шарды пересчёта)")
+    @GetMapping("/scheduler/leases")
+    public ResponseEntity<Map<String, Object>> getSchedulerLeases() {
+        return ResponseEntity.ok(schedulerLeases.stats());
+    }
+
+    @Operation(summary = "Рассылка push: занятые слоты, ожидающие отправки, счётчики по последним рейсам")
+    @GetMapping("/notifications/fanout")
+    public ResponseEntity<Map<String, Object>> getPushFanOut() {
+        return ResponseEntity.ok(pushFanOut.stats());
+    }
+
+    @Operation(summary = "Outbox уведомлений: строки по статусам, доставлено, отложено, исчерпали попытки")
+    @GetMapping("/notifications/outbox")
+    public ResponseEntity<Map<String, Object>> getNotificationOutbox() {
+        return ResponseEntity.ok(notificationOutboxWorker.stats());
+    }
+}
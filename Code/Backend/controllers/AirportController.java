@@ -1,12 +1,20 @@
 package com.example.lowflightzone.controllers;
 
+import com.example.lowflightzone.dto.AirportBoardDto;
 import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.dto.NearbyAirportDto;
 import com.example.lowflightzone.services.AirportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -14,6 +22,11 @@ import java.util.List;
 @Tag(name = "Airport Controller", description = "API для управления аэропортами")
 public class AirportController {
 
+    // 🗂 Справочник меняется редко: кэшируем надолго, изменения ловим ревалидацией по ETag
+    private static final CacheControl REFERENCE_CACHE = CacheControl.maxAge(Duration.ofHours(24))
+            .cachePublic()
+            .staleWhileRevalidate(Duration.ofHours(1));
+
     private final AirportService airportService;
 
     @Autowired
@@ -23,23 +36,66 @@ public class AirportController {
 
     @Operation(summary = "Получить все аэропорты")
     @GetMapping
-    public ResponseEntity<List<AirportDto>> getAllAirports() {
+    public ResponseEntity<List<AirportDto>> getAllAirports(WebRequest request) {
+        String eTag = airportService.getCatalogVersion();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
         List<AirportDto> airports = airportService.getAllAirports();
-        return ResponseEntity.ok(airports);
+        return referenceData(eTag).body(airports);
+    }
+
+    @Operation(summary = "Аэропорты в радиусе R км от точки")
+    @GetMapping("/nearby")
+    public ResponseEntity<List<NearbyAirportDto>> getAirportsNearby(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "100") double radiusKm) {
+        return ResponseEntity.ok(airportService.getAirportsWithinRadius(lat, lon, radiusKm));
+    }
+
+    @Operation(summary = "K ближайших к точке аэропортов")
+    @GetMapping("/nearest")
+    public ResponseEntity<List<NearbyAirportDto>> getNearestAirports(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "5") int k) {
+        return ResponseEntity.ok(airportService.getNearestAirports(lat, lon, k));
     }
 
     @Operation(summary = "Получить аэропорт по коду IATA")
     @GetMapping("/{iataCode}")
-    public ResponseEntity<AirportDto> getAirportByCode(@PathVariable String iataCode) {
+    public ResponseEntity<AirportDto> getAirportByCode(@PathVariable String iataCode, WebRequest request) {
+        String eTag = airportService.getCatalogVersion();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
         AirportDto airport = airportService.getAirportByCode(iataCode);
-        return ResponseEntity.ok(airport);
+        return referenceData(eTag).body(airport);
+    }
+
+    @Operation(summary = "Табло аэропорта: вылеты или прилёты в окне времени (по умолчанию ближайшие 3 часа)")
+    @GetMapping("/{iataCode}/board")
+    public ResponseEntity<AirportBoardDto> getBoard(
+            @PathVariable String iataCode,
+            @RequestParam(defaultValue = "departures") String direction,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime start = from != null ? from : LocalDateTime.now();
+        LocalDateTime end = to != null ? to : start.plusHours(3);
+        AirportBoardDto board = airportService.getBoard(iataCode.toUpperCase(), direction, start, end);
+        return ResponseEntity.ok(board);
     }
 
     @Operation(summary = "Найти аэропорты по городу")
     @GetMapping("/city/{city}")
-    public ResponseEntity<List<AirportDto>> getAirportsByCity(@PathVariable String city) {
+    public ResponseEntity<List<AirportDto>> getAirportsByCity(@PathVariable String city, WebRequest request) {
+        String eTag = airportService.getCatalogVersion();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
         List<AirportDto> airports = airportService.getAirportsByCity(city);
-        return ResponseEntity.ok(airports);
+        return referenceData(eTag).body(airports);
     }
 
     @Operation(summary = "Добавить новый аэропорт")
@@ -48,4 +104,17 @@ public class AirportController {
         AirportDto newAirport = airportService.addAirport(airportDto);
         return ResponseEntity.ok(newAirport);
     }
-}
\ No newline at end of file
+
+    private static ResponseEntity.BodyBuilder referenceData(String eTag) {
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(REFERENCE_CACHE);
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag)
+                .cacheControl(REFERENCE_CACHE)
+                .build();
+    }
+}
@@ -1,11 +1,26 @@
 package com.example.lowflightzone.controllers;
 
+import com.example.lowflightzone.dto.FlightBatchPatchResultDto;
 import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.dto.FlightImportResultDto;
+import com.example.lowflightzone.dto.FlightPageDto;
+import com.example.lowflightzone.repositories.FlightVersionView;
+import com.example.lowflightzone.security.SecurityUtils;
+import com.example.lowflightzone.services.FlightBatchUpdateService;
+import com.example.lowflightzone.services.FlightImportService;
 import com.example.lowflightzone.services.FlightService;
+import com.example.lowflightzone.services.FlightVersionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -13,44 +28,97 @@ import java.util.List;
 public class FlightController {
 
     private final FlightService flightService;
+    private final FlightVersionService flightVersionService;
+    private final SecurityUtils securityUtils;
+    private final FlightImportService flightImportService;
+    private final FlightBatchUpdateService flightBatchUpdateService;
 
     @Autowired
-    public FlightController(FlightService flightService) {
+    public FlightController(FlightService flightService, FlightVersionService flightVersionService,
+                            SecurityUtils securityUtils, FlightImportService flightImportService,
+                            FlightBatchUpdateService flightBatchUpdateService) {
         this.flightService = flightService;
+        this.flightVersionService = flightVersionService;
+        this.securityUtils = securityUtils;
+        this.flightImportService = flightImportService;
+        this.flightBatchUpdateService = flightBatchUpdateService;
     }
 
-    // 📌 Получение списка рейсов с фильтрацией
+    // 📌 Получение страницы рейсов с фильтрацией (keyset-пагинация по времени вылета)
     @GetMapping
-    public ResponseEntity<List<FlightDto>> getFlights(
+    public ResponseEntity<FlightPageDto> getFlights(
             @RequestParam(name = "departure", required = false) final String departureAirport,
             @RequestParam(name = "arrival", required = false) final String arrivalAirport,
-            @RequestParam(name = "status", required = false) final String status
+            @RequestParam(name = "status", required = false) final String status,
+            @RequestParam(name = "cursor", required = false) final String cursor,
+            @RequestParam(name = "size", required = false) final Integer size,
+            @RequestParam(name = "sort", required = false, defaultValue = "asc") final String sort,
+            final WebRequest request
     ) {
-        List<FlightDto> flights = flightService.getFlights(departureAirport, arrivalAirport, status);
-        return ResponseEntity.ok(flights);
+        String eTag = flightVersionService.collectionETag(securityUtils.getCurrentUserEmail().orElse(null));
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+        FlightPageDto flights = flightService.getFlights(departureAirport, arrivalAirport, status, cursor, size, sort);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(flights);
+    }
+
+    // 📌 Потоковая выгрузка всех рейсов в NDJSON
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportFlights() {
+        StreamingResponseBody body = flightService::exportFlights;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"flights.ndjson\"")
+                .body(body);
     }
 
     // 📌 Получение рейса по ID
     @GetMapping("/{id}")
-    public ResponseEntity<FlightDto> getFlightById(@PathVariable final Integer id) {
+    public ResponseEntity<FlightDto> getFlightById(@PathVariable final Integer id, final WebRequest request) {
+        FlightVersionView version = flightVersionService.getVersionById(id);
+        String eTag = flightVersionService.eTag(version);
+        long lastModified = flightVersionService.lastModified(version);
+        if (request.checkNotModified(eTag, lastModified)) {
+            return notModified(eTag);
+        }
         FlightDto flight = flightService.getFlightById(id);
-        return ResponseEntity.ok(flight);
+        return withVersion(eTag, lastModified).body(flight);
     }
 
     // 📌 Получение рейса по номеру
     @GetMapping("/number/{flightNumber}")
-    public ResponseEntity<FlightDto> getFlightByNumber(@PathVariable final String flightNumber) {
+    public ResponseEntity<FlightDto> getFlightByNumber(@PathVariable final String flightNumber,
+                                                       final WebRequest request) {
+        FlightVersionView version = flightVersionService.getVersionByNumber(flightNumber);
+        String eTag = flightVersionService.eTag(version);
+        long lastModified = flightVersionService.lastModified(version);
+        if (request.checkNotModified(eTag, lastModified)) {
+            return notModified(eTag);
+        }
         FlightDto flight = flightService.getFlightByNumber(flightNumber);
-        return ResponseEntity.ok(flight);
+        return withVersion(eTag, lastModified).body(flight);
     }
 
     @GetMapping("/search")
     public ResponseEntity<List<FlightDto>> searchFlights(
             @RequestParam("query") String query,
-            @RequestParam(name = "userEmail", required = false) String userEmail // 👈 добавляем
+            @RequestParam(name = "userEmail", required = false) String userEmail, // 👈 добавляем
+            @RequestParam(name = "limit", required = false, defaultValue = "50") int limit,
+            WebRequest request
     ) {
-        List<FlightDto> results = flightService.searchFlights(query, userEmail);
-        return ResponseEntity.ok(results);
+        String eTag = flightVersionService.collectionETag(userEmail);
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+        List<FlightDto> results = flightService.searchFlights(query, userEmail, limit);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(results);
     }
 
     // 📌 Добавление нового рейса
@@ -60,6 +128,18 @@ public class FlightController {
         return ResponseEntity.status(HttpStatus.CREATED).body(newFlight);
     }
 
+    // 📌 Массовый импорт расписания: CSV (text/csv) или JSON-массив, upsert по номеру рейса
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<FlightImportResultDto> importFlights(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) final String contentType,
+            final InputStream body
+    ) throws IOException {
+        FlightImportResultDto result = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_JSON)
+                ? flightImportService.importJson(body)
+                : flightImportService.importCsv(body);
+        return ResponseEntity.ok(result);
+    }
+
     // 📌 Удаление рейса по ID
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteFlight(@PathVariable final Integer id) {
@@ -75,6 +155,12 @@ public class FlightController {
         return ResponseEntity.ok(updatedFlight);
     }
 
+    // 📌 Пакетное обновление статусов/задержек/гейтов (оперативный фид)
+    @PatchMapping("/batch")
+    public ResponseEntity<FlightBatchPatchResultDto> patchFlights(@RequestBody final List<FlightDto> patches) {
+        return ResponseEntity.ok(flightBatchUpdateService.patchFlights(patches));
+    }
+
     // 📌 Частичное обновление рейса
     @PatchMapping("/{id}")
     public ResponseEntity<FlightDto> patchFlight(@PathVariable final Integer id,
@@ -82,4 +168,16 @@ public class FlightController {
         FlightDto updatedFlight = flightService.patchFlight(id, flightDto);
         return ResponseEntity.ok(updatedFlight);
     }
+
+    // 🏷 Клиент должен перепроверять ответ (If-None-Match), но может не скачивать тело заново
+    private ResponseEntity.BodyBuilder withVersion(String eTag, long lastModified) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache());
+        return lastModified >= 0 ? builder.lastModified(lastModified) : builder;
+    }
+
+    private <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
 }
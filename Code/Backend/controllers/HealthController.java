@@ -1,7 +1,10 @@
 package com.example.lowflightzone.controllers;
 
 import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.services.StartupPhases;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import java.util.Map;
@@ -11,6 +14,7 @@ import java.util.Map;
 public class HealthController {
 
     private final FlightDao flightDao;
+    private final StartupPhases startupPhases;
 
     @GetMapping("/health")
     public Map<String, String> health() {
@@ -21,6 +25,23 @@ public class HealthController {
         );
     }
 
+    /** Readiness: 503, пока идёт фоновый прогрев (первичный пересчёт рейсов) */
+    @GetMapping("/health/ready")
+    public ResponseEntity<Map<String, String>> ready() {
+        Map<String, String> body = Map.of(
+                "status", startupPhases.getState().name(),
+                "timestamp", java.time.LocalDateTime.now().toString()
+        );
+        return ResponseEntity.status(startupPhases.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(body);
+    }
+
+    /** Длительности фаз старта: подъём контекста, инициализация данных, индексы, первичный пересчёт */
+    @GetMapping("/health/startup")
+    public Map<String, Object> startup() {
+        return startupPhases.snapshot();
+    }
+
     @GetMapping("/db-status")
     public Map<String, Object> dbStatus() {
         long flightCount = flightDao.findAll().size();
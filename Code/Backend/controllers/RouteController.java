@@ -0,0 +1,48 @@
+package com.example.lowflightzone.controllers;
+
+import com.example.lowflightzone.dto.ItineraryDto;
+import com.example.lowflightzone.services.RouteSearchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/routes")
+@Tag(name = "Route Controller", description = "API для поиска маршрутов с пересадками")
+public class RouteController {
+
+    private final RouteSearchService routeSearchService;
+
+    @Operation(summary = "Найти маршруты (прямые и с 1–2 пересадками) между аэропортами")
+    @GetMapping("/search")
+    public ResponseEntity<List<ItineraryDto>> searchRoutes(
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime departAfter,
+            @RequestParam(defaultValue = "24") int windowHours,
+            @RequestParam(defaultValue = "2") int maxStops,
+            @RequestParam(defaultValue = "60") int minConnectionMinutes,
+            @RequestParam(defaultValue = "1440") int maxDurationMinutes,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        List<ItineraryDto> itineraries = routeSearchService.findItineraries(
+                from,
+                to,
+                departAfter != null ? departAfter : LocalDateTime.now(),
+                Duration.ofHours(windowHours),
+                maxStops,
+                Duration.ofMinutes(minConnectionMinutes),
+                Duration.ofMinutes(maxDurationMinutes),
+                Math.min(Math.max(limit, 1), 50)
+        );
+        return ResponseEntity.ok(itineraries);
+    }
+}
@@ -25,6 +25,11 @@ public class AirportDao {
         return airportRepository.findByIataCode(iataCode);
     }
 
+    /** Ссылка на аэропорт без SELECT — для установки связи при записи рейса */
+    public Airport getReference(String iataCode) {
+        return airportRepository.getReferenceById(iataCode);
+    }
+
     public List<Airport> findByCity(String city) {
         return airportRepository.findByCityContainingIgnoreCase(city);
     }
@@ -1,21 +1,70 @@
 package com.example.lowflightzone.dao;
 
 import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.repositories.CollectionVersionRepository;
+import com.example.lowflightzone.repositories.FlightEstimateRow;
+import com.example.lowflightzone.repositories.FlightIdScope;
+import com.example.lowflightzone.repositories.FlightKeyRow;
 import com.example.lowflightzone.repositories.FlightRepository;
+import com.example.lowflightzone.repositories.FlightRow;
+import com.example.lowflightzone.repositories.FlightStateRow;
+import com.example.lowflightzone.repositories.FlightVersionView;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public class FlightDao {
 
+    private static final int JDBC_BATCH_SIZE = 500;
+    /** Строка collection_versions, по которой строятся ETag списков рейсов */
+    public static final String COLLECTION = "flights";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO flights (flight_number, airline, departure_airport, arrival_airport,
+                scheduled_departure, scheduled_arrival, estimated_departure, estimated_arrival,
+                delay_minutes, terminal, gate, status, last_updated, active_subscription_count)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE flights SET airline = ?, departure_airport = ?, arrival_airport = ?,
+                scheduled_departure = ?, scheduled_arrival = ?, estimated_departure = ?, estimated_arrival = ?,
+                delay_minutes = ?, terminal = ?, gate = ?, status = ?, last_updated = ?
+            WHERE id = ?
+            """;
+
+    private static final String PATCH_SQL = """
+            UPDATE flights SET status = ?, delay_minutes = ?, terminal = ?, gate = ?,
+                scheduled_departure = ?, estimated_departure = ?, estimated_arrival = ?, last_updated = ?
+            WHERE id = ? AND COALESCE(last_updated, TIMESTAMP '1970-01-01 00:00:00') = ?
+            """;
+
+    private static final String RECALC_SQL = """
+            UPDATE flights SET status = ?, estimated_departure = ?, estimated_arrival = ?,
+                actual_departure = ?, actual_arrival = ?, last_updated = ?
+            WHERE id = ? AND COALESCE(last_updated, TIMESTAMP '1970-01-01 00:00:00') = ?
+            """;
+    private static final LocalDateTime NEVER_UPDATED = LocalDateTime.of(1970, 1, 1, 0, 0);
+
     private final FlightRepository flightRepository;
+    private final CollectionVersionRepository collectionVersionRepository;
+    private final JdbcTemplate jdbcTemplate;
 
     @Autowired
-    public FlightDao(FlightRepository flightRepository) {
+    public FlightDao(FlightRepository flightRepository, CollectionVersionRepository collectionVersionRepository,
+                     JdbcTemplate jdbcTemplate) {
         this.flightRepository = flightRepository;
+        this.collectionVersionRepository = collectionVersionRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public boolean existsByFlightNumber(String flightNumber) {
@@ -26,6 +75,21 @@ public class FlightDao {
         return flightRepository.findAll();
     }
 
+    public List<FlightRow> findPage(String departureAirport, String arrivalAirport, Flight.FlightStatus status,
+                                 LocalDateTime afterDeparture, Integer afterId, boolean descending, int limit) {
+        return flightRepository.findPage(departureAirport, arrivalAirport, status,
+                afterDeparture, afterId, descending, limit);
+    }
+
+    public List<FlightRow> findRowsByIds(Collection<Integer> ids) {
+        return flightRepository.findRowsByIdIn(ids);
+    }
+
+    /** Курсорное чтение всей таблицы — вызывать внутри транзакции и закрывать поток */
+    public Stream<Flight> streamAllForExport() {
+        return flightRepository.streamAllForExport();
+    }
+
     public Optional<Flight> findById(Integer id) {
         return flightRepository.findById(id);
     }
@@ -34,12 +98,254 @@ public class FlightDao {
         return flightRepository.findByFlightNumber(flightNumber);
     }
 
+    public Optional<FlightVersionView> findVersionById(Integer id) {
+        return flightRepository.findVersionById(id);
+    }
+
+    public Optional<FlightVersionView> findVersionByFlightNumber(String flightNumber) {
+        return flightRepository.findVersionByFlightNumber(flightNumber);
+    }
+
+    /** Версия коллекции рейсов: растёт с каждой записью в flights (0, пока строки нет) */
+    public long findCollectionVersion() {
+        return collectionVersionRepository.findVersion(COLLECTION).orElse(0L);
+    }
+
+    /** Создаёт строку версии коллекции, если её ещё нет; при гонке узлов строку создаёт один из них */
+    public void ensureCollectionVersion() {
+        if (collectionVersionRepository.existsById(COLLECTION)) {
+            return;
+        }
+        try {
+            collectionVersionRepository.insert(COLLECTION);
+        } catch (DataIntegrityViolationException e) {
+            // строку уже создал другой узел
+        }
+    }
+
+    @Transactional
     public Flight save(Flight flight) {
-        return flightRepository.save(flight);
+        Flight saved = flightRepository.save(flight);
+        bumpCollectionVersion();
+        return saved;
+    }
+
+    @Transactional
+    public List<Flight> saveAll(List<Flight> flights) {
+        List<Flight> saved = flightRepository.saveAll(flights);
+        bumpIfChanged(saved.size());
+        return saved;
     }
 
     @Transactional
     public void deleteById(Integer id) {
         flightRepository.deleteById(id);
+        bumpCollectionVersion();
+    }
+
+    @Transactional
+    public void incrementActiveSubscriptions(Integer flightId) {
+        flightRepository.adjustActiveSubscriptionCount(flightId, 1);
+        bumpCollectionVersion();
+    }
+
+    @Transactional
+    public void decrementActiveSubscriptions(Integer flightId) {
+        flightRepository.adjustActiveSubscriptionCount(flightId, -1);
+        bumpCollectionVersion();
+    }
+
+    @Transactional
+    public int reconcileActiveSubscriptionCounts() {
+        return bumpIfChanged(flightRepository.reconcileActiveSubscriptionCounts());
+    }
+
+    @Transactional
+    public int recountActiveSubscriptions(Collection<Integer> flightIds) {
+        return bumpIfChanged(flightRepository.recountActiveSubscriptions(flightIds));
+    }
+
+    public List<FlightKeyRow> findKeysByFlightNumbers(Collection<String> flightNumbers) {
+        return flightRepository.findKeysByFlightNumberIn(flightNumbers);
+    }
+
+    public List<Flight> findAllByFlightNumbers(Collection<String> flightNumbers) {
+        return flightRepository.findAllByFlightNumberIn(flightNumbers);
+    }
+
+    /**
+     * Пакетная вставка новых рейсов через JDBC (минуя persistence context).
+     * Для настоящего батчинга на стороне драйвера включите reWriteBatchedInserts (PostgreSQL)
+     * или rewriteBatchedStatements (MySQL).
+     */
+    @Transactional
+    public void batchInsert(List<Flight> flights, LocalDateTime now) {
+        if (!flights.isEmpty()) {
+            bumpCollectionVersion();
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, flights, JDBC_BATCH_SIZE, (ps, f) -> {
+            ps.setString(1, f.getFlightNumber());
+            ps.setString(2, f.getAirline());
+            ps.setString(3, f.getDepartureAirport().getIataCode());
+            ps.setString(4, f.getArrivalAirport().getIataCode());
+            ps.setObject(5, f.getScheduledDeparture());
+            ps.setObject(6, f.getScheduledArrival());
+            ps.setObject(7, f.getEstimatedDeparture());
+            ps.setObject(8, f.getEstimatedArrival());
+            ps.setObject(9, f.getDelayMinutes() != null ? f.getDelayMinutes() : 0);
+            ps.setString(10, f.getTerminal());
+            ps.setString(11, f.getGate());
+            ps.setString(12, (f.getStatus() != null ? f.getStatus() : Flight.FlightStatus.SCHEDULED).name());
+            ps.setObject(13, now);
+        });
+    }
+
+    /** Пакетное обновление существующих рейсов по id; счётчик подписок и фактические времена не трогаются */
+    @Transactional
+    public void batchUpdate(List<Flight> flights, LocalDateTime now) {
+        if (!flights.isEmpty()) {
+            bumpCollectionVersion();
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, flights, JDBC_BATCH_SIZE, (ps, f) -> {
+            ps.setString(1, f.getAirline());
+            ps.setString(2, f.getDepartureAirport().getIataCode());
+            ps.setString(3, f.getArrivalAirport().getIataCode());
+            ps.setObject(4, f.getScheduledDeparture());
+            ps.setObject(5, f.getScheduledArrival());
+            ps.setObject(6, f.getEstimatedDeparture());
+            ps.setObject(7, f.getEstimatedArrival());
+            ps.setObject(8, f.getDelayMinutes() != null ? f.getDelayMinutes() : 0);
+            ps.setString(9, f.getTerminal());
+            ps.setString(10, f.getGate());
+            ps.setString(11, (f.getStatus() != null ? f.getStatus() : Flight.FlightStatus.SCHEDULED).name());
+            ps.setObject(12, now);
+            ps.setInt(13, f.getId());
+        });
+    }
+
+    /** Keyset-страница строк с id больше afterId, по возрастанию id */
+    public List<FlightRow> findRowsAfterId(Integer afterId, int limit) {
+        return flightRepository.findRowsAfterId(afterId, PageRequest.of(0, limit));
+    }
+
+    public List<FlightRow> findRowsByFlightNumbers(Collection<String> flightNumbers) {
+        return flightRepository.findRowsByFlightNumberIn(flightNumbers);
+    }
+
+    public List<Flight> findAllByIds(Collection<Integer> ids) {
+        return flightRepository.findAllById(ids);
+    }
+
+    /**
+     * Пакетное применение оперативных патчей одним JDBC batch.
+     * Возвращает по элементу на патч: true — строка обновлена, false — версия не совпала.
+     */
+    @Transactional
+    public boolean[] batchPatch(List<FlightPatch> patches, LocalDateTime now) {
+        int[][] counts = jdbcTemplate.batchUpdate(PATCH_SQL, patches, JDBC_BATCH_SIZE, (ps, p) -> {
+            ps.setString(1, p.status().name());
+            ps.setObject(2, p.delayMinutes());
+            ps.setString(3, p.terminal());
+            ps.setString(4, p.gate());
+            ps.setObject(5, p.scheduledDeparture());
+            ps.setObject(6, p.estimatedDeparture());
+            ps.setObject(7, p.estimatedArrival());
+            ps.setObject(8, now);
+            ps.setInt(9, p.id());
+            ps.setObject(10, p.expectedLastUpdated() != null ? p.expectedLastUpdated() : NEVER_UPDATED);
+        });
+        return bumpIfApplied(toApplied(counts, patches.size()));
+    }
+
+    public Integer findMinId() {
+        return flightRepository.findMinId();
+    }
+
+    public Integer findMaxId() {
+        return flightRepository.findMaxId();
+    }
+
+    public List<FlightStateRow> findStatesByIdRange(Integer fromId, Integer toId) {
+        return flightRepository.findStatesByIdBetween(fromId, toId);
+    }
+
+    public List<FlightStateRow> findStatesByIds(Collection<Integer> ids) {
+        return flightRepository.findStatesByIdIn(ids);
+    }
+
+    public List<FlightStateRow> findStatesUpdatedSince(LocalDateTime since) {
+        return flightRepository.findStatesByLastUpdatedAfter(since);
+    }
+
+    /**
+     * Пакетная запись результатов пересчёта одним JDBC batch.
+     * Возвращает по элементу на запись: true — строка обновлена, false — рейс успели изменить.
+     */
+    @Transactional
+    public boolean[] batchRecalculate(List<FlightRecalculation> changes, LocalDateTime now) {
+        int[][] counts = jdbcTemplate.batchUpdate(RECALC_SQL, changes, JDBC_BATCH_SIZE, (ps, c) -> {
+            ps.setString(1, c.status().name());
+            ps.setObject(2, c.estimatedDeparture());
+            ps.setObject(3, c.estimatedArrival());
+            ps.setObject(4, c.actualDeparture());
+            ps.setObject(5, c.actualArrival());
+            ps.setObject(6, now);
+            ps.setInt(7, c.id());
+            ps.setObject(8, c.expectedLastUpdated() != null ? c.expectedLastUpdated() : NEVER_UPDATED);
+        });
+        return bumpIfApplied(toApplied(counts, changes.size()));
+    }
+
+    /** SQL-пересчёт набора рейсов на стороне БД; возвращает id изменённых строк */
+    @Transactional
+    public List<Integer> bulkRecalculate(FlightIdScope scope, LocalDateTime now, LocalDateTime mark) {
+        List<Integer> changed = flightRepository.bulkRecalculate(scope, now, mark);
+        bumpIfChanged(changed.size());
+        return changed;
+    }
+
+    public long countInScope(FlightIdScope scope) {
+        return flightRepository.countInScope(scope);
+    }
+
+    public List<FlightEstimateRow> findUpcomingEstimates(FlightIdScope scope, LocalDateTime now) {
+        return flightRepository.findUpcomingEstimates(scope, now);
+    }
+
+    /**
+     * Версия коллекции растёт в транзакции записи, поэтому ETag списка меняется ровно тогда,
+     * когда изменение становится видно. Строка блокируется до коммита — держите такие транзакции короткими.
+     */
+    private void bumpCollectionVersion() {
+        collectionVersionRepository.bump(COLLECTION);
+    }
+
+    private int bumpIfChanged(int changed) {
+        if (changed > 0) {
+            bumpCollectionVersion();
+        }
+        return changed;
+    }
+
+    private boolean[] bumpIfApplied(boolean[] applied) {
+        for (boolean a : applied) {
+            if (a) {
+                bumpCollectionVersion();
+                break;
+            }
+        }
+        return applied;
+    }
+
+    private static boolean[] toApplied(int[][] counts, int size) {
+        boolean[] applied = new boolean[size];
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                // SUCCESS_NO_INFO (-2): драйвер не сообщил число строк — считаем применённым
+                applied[i++] = count != 0;
+            }
+        }
+        return applied;
     }
 }
@@ -0,0 +1,23 @@
+package com.example.lowflightzone.dao;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+
+/**
+ * Итоговые значения оперативных полей рейса для пакетного UPDATE.
+ * expectedLastUpdated — версия, от которой считался патч: строка, изменённая
+ * параллельно, не перезаписывается.
+ */
+public record FlightPatch(
+        Integer id,
+        LocalDateTime expectedLastUpdated,
+        Flight.FlightStatus status,
+        Integer delayMinutes,
+        String terminal,
+        String gate,
+        LocalDateTime scheduledDeparture,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival
+) {
+}
@@ -0,0 +1,21 @@
+package com.example.lowflightzone.dao;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+
+/**
+ * Результат пересчёта рейса для пакетного UPDATE.
+ * expectedLastUpdated — версия, с которой считали: строка, изменённая
+ * параллельно, не перезаписывается.
+ */
+public record FlightRecalculation(
+        Integer id,
+        LocalDateTime expectedLastUpdated,
+        Flight.FlightStatus status,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        LocalDateTime actualDeparture,
+        LocalDateTime actualArrival
+) {
+}
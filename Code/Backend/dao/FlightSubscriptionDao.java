@@ -2,11 +2,16 @@ package com.example.lowflightzone.dao;
 
 import com.example.lowflightzone.entity.FlightSubscription;
 import com.example.lowflightzone.repositories.FlightSubscriptionRepository;
+import com.example.lowflightzone.repositories.SubscriptionRow;
+import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public class FlightSubscriptionDao {
@@ -22,6 +27,10 @@ public class FlightSubscriptionDao {
         return subscriptionRepository.findActiveSubscriptionsByUserId(userId);
     }
 
+    public Set<Integer> findActiveFlightIdsByUserEmail(String userEmail) {
+        return subscriptionRepository.findActiveFlightIdsByUserEmail(userEmail);
+    }
+
     public List<FlightSubscription> findAll() {
         return subscriptionRepository.findAll();
     }
@@ -41,6 +50,23 @@ public class FlightSubscriptionDao {
         return subscriptionRepository.findByFlightNumberAndStatus(flightNumber, status);
     }
 
+    public List<SubscriptionRow> findActiveRowsByUserEmail(String userEmail) {
+        return subscriptionRepository.findRowsByUserEmailAndStatus(
+                userEmail, FlightSubscription.SubscriptionStatus.ACTIVE);
+    }
+
+    public List<SubscriptionRow> findActiveRowsByUserId(Integer userId) {
+        return subscriptionRepository.findRowsByUserIdAndStatus(
+                userId, FlightSubscription.SubscriptionStatus.ACTIVE);
+    }
+
+    public List<SubscriptionRow> findRowsByFlightNumberAndStatus(
+            String flightNumber,
+            FlightSubscription.SubscriptionStatus status
+    ) {
+        return subscriptionRepository.findRowsByFlightNumberAndStatus(flightNumber, status);
+    }
+
     public List<FlightSubscription> findByUserEmail(String userEmail) {
         return subscriptionRepository.findByUserEmailAndStatus(
                 userEmail,
@@ -61,6 +87,21 @@ public class FlightSubscriptionDao {
         subscriptionRepository.deleteById(id);
     }
 
+    public List<Integer> findActiveFlightIdsByEndpoints(Collection<String> endpoints) {
+        return subscriptionRepository.findActiveFlightIdsByEndpointIn(endpoints);
+    }
+
+    /** ACTIVE → INACTIVE для всех подписок с этими endpoint'ами; вызывать в транзакции */
+    public int deactivateByEndpoints(Collection<String> endpoints) {
+        return subscriptionRepository.deactivateByEndpointIn(endpoints);
+    }
+
+    /** Время последнего доставленного уведомления — по нему outbox сливает частые изменения */
+    @Transactional
+    public int markNotified(Collection<Integer> subscriptionIds, LocalDateTime now) {
+        return subscriptionRepository.markNotified(subscriptionIds, now);
+    }
+
     public boolean existsActiveByFlightAndUser(String flightNumber, String userEmail) {
         return subscriptionRepository.existsByFlight_FlightNumberAndUser_EmailAndStatus(
                 flightNumber,
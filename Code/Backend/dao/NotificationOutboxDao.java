@@ -0,0 +1,124 @@
+package com.example.lowflightzone.dao;
+
+import com.example.lowflightzone.entity.NotificationOutbox;
+import com.example.lowflightzone.repositories.NotificationOutboxRepository;
+import com.example.lowflightzone.repositories.OutboxDeliveryRow;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+@Repository
+public class NotificationOutboxDao {
+
+    private static final int JDBC_BATCH_SIZE = 500;
+
+    private static final String RETRY_SQL = """
+            UPDATE notification_outbox SET attempts = ?, next_attempt_at = ?, status = ?, last_error = ?,
+                claimed_by = NULL, claimed_until = NULL
+            WHERE id = ? AND claimed_by = ?
+            """;
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public NotificationOutboxDao(NotificationOutboxRepository outboxRepository, JdbcTemplate jdbcTemplate) {
+        this.outboxRepository = outboxRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Вызывается в транзакции изменения рейса — строки outbox коммитятся вместе с ним.
+     * Подписки, уведомлённые после recentSince, получат строку с отправкой в deferredUntil.
+     */
+    @Transactional
+    public int enqueueFlightUpdate(Integer flightId, Set<String> changedFields, LocalDateTime now,
+                                   LocalDateTime recentSince, LocalDateTime deferredUntil) {
+        return outboxRepository.enqueueFlightUpdate(flightId, NotificationOutbox.joinFields(changedFields),
+                now, recentSince, deferredUntil);
+    }
+
+    /**
+     * Сливает изменённые поля в ожидающие отправки уведомления рейса.
+     * <p>
+     * UPDATE сравнивает с прочитанным значением (compare-and-set): если параллельное слияние
+     * успело поменять набор полей, строки перечитываются, пока все ожидающие строки не содержат
+     * изменённые поля. Цикл конечен: чужой успешный UPDATE только расширяет набор полей строки,
+     * а полей конечное число. Строки, захваченные воркером за это время, слиянию не подлежат —
+     * для таких подписок {@link #enqueueFlightUpdate} добавит новую строку.
+     *
+     * @return сколько ожидающих строк поглотили изменение
+     */
+    @Transactional
+    public long mergeIntoPending(Integer flightId, Set<String> changedFields, LocalDateTime now) {
+        while (true) {
+            List<String> stale = outboxRepository.findPendingChangedFields(flightId, now).stream()
+                    .filter(current -> !NotificationOutbox.splitFields(current).containsAll(changedFields))
+                    .toList();
+            if (stale.isEmpty()) {
+                return outboxRepository.countPending(flightId, now);
+            }
+            for (String current : stale) {
+                Set<String> merged = NotificationOutbox.splitFields(current);
+                merged.addAll(changedFields);
+                outboxRepository.mergePendingChangedFields(flightId, current, NotificationOutbox.joinFields(merged), now);
+            }
+        }
+    }
+
+    /**
+     * Захват пачки одной транзакцией: id выбираются с FOR UPDATE SKIP LOCKED, поэтому
+     * параллельные воркеры берут разные строки, а не выстраиваются в очередь за одними и теми же.
+     */
+    @Transactional
+    public int claim(String token, LocalDateTime now, LocalDateTime until, int limit) {
+        List<Long> ids = outboxRepository.lockClaimable(now, limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return outboxRepository.claim(ids, token, now, until);
+    }
+
+    public List<OutboxDeliveryRow> findClaimed(String token) {
+        return outboxRepository.findClaimed(token);
+    }
+
+    @Transactional
+    public int markDone(Collection<Long> ids, String token, LocalDateTime now) {
+        return outboxRepository.markDone(ids, token, now);
+    }
+
+    /** Неудачные попытки одним JDBC batch; строки, захваченные уже другим воркером, не трогаются */
+    @Transactional
+    public void batchRetry(List<OutboxRetry> retries, String token) {
+        jdbcTemplate.batchUpdate(RETRY_SQL, retries, JDBC_BATCH_SIZE, (ps, r) -> {
+            ps.setInt(1, r.attempts());
+            ps.setObject(2, r.nextAttemptAt());
+            ps.setString(3, (r.exhausted() ? NotificationOutbox.Status.FAILED : NotificationOutbox.Status.PENDING).name());
+            ps.setString(4, r.error());
+            ps.setLong(5, r.id());
+            ps.setString(6, token);
+        });
+    }
+
+    public Map<String, Long> countByStatus() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Object[] row : outboxRepository.countByStatus()) {
+            counts.put(String.valueOf(row[0]), (Long) row[1]);
+        }
+        return counts;
+    }
+
+    @Transactional
+    public int deleteDeliveredBefore(LocalDateTime before) {
+        return outboxRepository.deleteDeliveredBefore(before);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.lowflightzone.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * Неудачная попытка доставки строки outbox для пакетного UPDATE.
+ * exhausted — попытки кончились, строка переводится в FAILED.
+ */
+public record OutboxRetry(
+        Long id,
+        int attempts,
+        LocalDateTime nextAttemptAt,
+        boolean exhausted,
+        String error
+) {
+}
@@ -0,0 +1,19 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+public class AirportBoardDto {
+    private String airport;
+    private String direction; // departures | arrivals
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<FlightDto> flights;
+}
@@ -0,0 +1,20 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+public class FlightBatchPatchResultDto {
+    private int requested;
+    private int updated;
+    private int unchanged; // патч совпал с текущим состоянием — запись не выполнялась
+    private int failed;
+    private List<FlightChangeDto> changes = new ArrayList<>();
+    private List<FlightRowErrorDto> errors = new ArrayList<>();
+}
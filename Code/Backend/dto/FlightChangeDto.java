@@ -0,0 +1,20 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Set;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlightChangeDto {
+    private Integer flightId;
+    private String flightNumber;
+    private Set<String> changedFields; // имена полей FlightDto, значения которых изменились
+}
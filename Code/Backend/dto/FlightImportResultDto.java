@@ -0,0 +1,21 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+public class FlightImportResultDto {
+    private int total;
+    private int inserted;
+    private int updated;
+    private int failed;
+    private long durationMs;
+    private boolean errorsTruncated; // ошибок больше, чем помещается в ответ
+    private List<FlightRowErrorDto> errors = new ArrayList<>();
+}
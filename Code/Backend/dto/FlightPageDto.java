@@ -0,0 +1,18 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+public class FlightPageDto {
+    private List<FlightDto> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor; // передаётся в ?cursor= для следующей страницы
+    private String sort;
+}
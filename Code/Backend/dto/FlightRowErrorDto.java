@@ -0,0 +1,18 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlightRowErrorDto {
+    private int row; // номер строки CSV (с заголовком), элемента JSON-массива или пакета, с 1
+    private String flightNumber;
+    private String message;
+}
@@ -0,0 +1,20 @@
+package com.example.lowflightzone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@Setter
+public class ItineraryDto {
+    private List<FlightDto> legs;
+    private int stops;
+    private LocalDateTime departure;
+    private LocalDateTime arrival;
+    private long totalDurationMinutes;
+    private List<Long> connectionMinutes; // время на пересадку между плечами
+}
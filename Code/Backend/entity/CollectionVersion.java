@@ -0,0 +1,22 @@
+package com.example.lowflightzone.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Монотонная версия коллекции (строка на коллекцию, например «flights»).
+ * Увеличивается в той же транзакции, что и запись в коллекцию, — по ней строятся ETag списков.
+ */
+@Entity
+@Table(name = "collection_versions")
+@Getter
+@Setter
+public class CollectionVersion {
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+}
@@ -8,7 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "flights")
+@Table(name = "flights", indexes = @Index(name = "idx_flights_last_updated", columnList = "last_updated"))
 @Getter
 @Setter
 public class Flight {
@@ -64,6 +64,16 @@ public class Flight {
     @Column(name = "last_updated")
     private LocalDateTime lastUpdated;
 
+    // Метка последнего SQL-пересчёта, тронувшего строку: по ней выбираются изменённые id.
+    // Пишется только bulk UPDATE, сохранение сущности её не трогает
+    @Column(name = "recalc_run", insertable = false, updatable = false)
+    private Long recalcRun;
+
+    // Денормализованный счётчик ACTIVE-подписок: меняется только атомарными UPDATE из репозитория,
+    // поэтому сохранение сущности его не перезаписывает
+    @Column(name = "active_subscription_count", updatable = false)
+    private Integer activeSubscriptionCount = 0;
+
     @OneToMany(mappedBy = "flight", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<FlightSubscription> subscriptions = new ArrayList<>();
 
@@ -81,9 +91,12 @@ public class Flight {
         if (delayMinutes == null) {
             delayMinutes = 0;
         }
+        if (activeSubscriptionCount == null) {
+            activeSubscriptionCount = 0;
+        }
     }
 
     public int getSubscriptionCount() {
-        return subscriptions != null ? subscriptions.size() : 0;
+        return activeSubscriptionCount != null ? activeSubscriptionCount : 0;
     }
 }
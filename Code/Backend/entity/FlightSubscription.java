@@ -53,7 +53,8 @@ public class FlightSubscription {
     private Integer minDelayMinutes;
 
     public enum SubscriptionStatus {
-        ACTIVE, PAUSED, CANCELLED
+        ACTIVE, PAUSED, CANCELLED,
+        INACTIVE // push-сервис сообщил, что endpoint больше не существует
     }
 
     @Column(nullable = false, length = 500)
@@ -21,8 +21,8 @@ public class FlightViewHistory {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
-    // Связь с рейсом
-    @ManyToOne(fetch = FetchType.EAGER)
+    // Связь с рейсом (DTO рейса берётся из кэша по id, сама сущность не нужна)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "flight_id", nullable = false)
     private Flight flight;
 
@@ -0,0 +1,94 @@
+package com.example.lowflightzone.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Исходящее уведомление для одной подписки. Пишется в той же транзакции, что и изменение рейса,
+ * доставляется фоновым воркером: claimedBy/claimedUntil — временный захват строки воркером,
+ * после истечения строку может забрать любой узел.
+ * Текст строится при отправке по текущему состоянию рейса; changedFields — объединение полей
+ * всех изменений, слитых в эту строку, пока она ждала отправки.
+ */
+@Entity
+@Table(name = "notification_outbox",
+        indexes = {
+                @Index(name = "idx_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_outbox_flight_status", columnList = "flight_id, status"),
+                @Index(name = "idx_outbox_subscription_status", columnList = "subscription_id, status")
+        })
+@Getter
+@Setter
+public class NotificationOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private Type type;
+
+    @Column(name = "subscription_id", nullable = false)
+    private Integer subscriptionId;
+
+    @Column(name = "flight_id", nullable = false)
+    private Integer flightId;
+
+    @Column(name = "changed_fields", nullable = false)
+    private String changedFields;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
+    public enum Type {
+        FLIGHT_UPDATE
+    }
+
+    public enum Status {
+        PENDING, DONE, FAILED
+    }
+
+    /** changedFields хранится как отсортированный список через запятую — одинаковые наборы равны строкой */
+    public static String joinFields(Collection<String> fields) {
+        return String.join(",", new TreeSet<>(fields));
+    }
+
+    public static Set<String> splitFields(String fields) {
+        Set<String> result = new TreeSet<>();
+        if (fields != null) {
+            for (String field : fields.split(",")) {
+                if (!field.isBlank()) {
+                    result.add(field.trim());
+                }
+            }
+        }
+        return result;
+    }
+}
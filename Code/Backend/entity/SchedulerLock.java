@@ -0,0 +1,29 @@
+package com.example.lowflightzone.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+
+/**
+ * Аренда (lease) фоновой работы между узлами: строка на каждую блокировку,
+ * владелец продлевает expiresAt, после истечения её может забрать любой узел.
+ */
+@Entity
+@Table(name = "scheduler_locks")
+@Getter
+@Setter
+public class SchedulerLock {
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "owner", nullable = false, length = 128)
+    private String owner;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "acquired_at")
+    private LocalDateTime acquiredAt;
+}
@@ -0,0 +1,39 @@
+package com.example.lowflightzone.events;
+
+import com.example.lowflightzone.entity.Flight;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Событие об изменении рейса. Публикуется сервисами после сохранения,
+ * слушатели (индексы, кэши) обновляют своё состояние инкрементально.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FlightChangedEvent {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED,
+        SUBSCRIPTIONS // изменилось число активных подписок, поля рейса прежние
+    }
+
+    private final Integer flightId;
+    private final Flight flight; // null для DELETED и SUBSCRIPTIONS
+    private final ChangeType type;
+
+    public static FlightChangedEvent created(Flight flight) {
+        return new FlightChangedEvent(flight.getId(), flight, ChangeType.CREATED);
+    }
+
+    public static FlightChangedEvent updated(Flight flight) {
+        return new FlightChangedEvent(flight.getId(), flight, ChangeType.UPDATED);
+    }
+
+    public static FlightChangedEvent deleted(Integer flightId) {
+        return new FlightChangedEvent(flightId, null, ChangeType.DELETED);
+    }
+
+    public static FlightChangedEvent subscriptionsChanged(Integer flightId) {
+        return new FlightChangedEvent(flightId, null, ChangeType.SUBSCRIPTIONS);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.lowflightzone.events;
+
+import com.example.lowflightzone.entity.Flight;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Набор изменений рейсов, применённых одной пакетной операцией.
+ * Публикуется внутри транзакции; уведомления по нему пишутся в outbox перед коммитом.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FlightsBatchChangedEvent {
+
+    public record Change(Flight flight, Set<String> changedFields) {
+    }
+
+    private final List<Change> changes;
+}
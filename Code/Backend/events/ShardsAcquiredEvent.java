@@ -0,0 +1,17 @@
+package com.example.lowflightzone.events;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * Узел получил аренду шардов пересчёта рейсов (при старте или после падения прежнего владельца).
+ * Новый владелец должен пересчитать эти шарды и заполнить по ним очередь переходов.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ShardsAcquiredEvent {
+
+    private final Set<Integer> shards;
+}
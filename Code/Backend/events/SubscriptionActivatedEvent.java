@@ -0,0 +1,19 @@
+package com.example.lowflightzone.events;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Подписка создана или реактивирована. Несёт только данные для подтверждения:
+ * оно отправляется после коммита, когда сущности подписки уже отсоединены.
+ */
+@Getter
+@RequiredArgsConstructor
+public class SubscriptionActivatedEvent {
+
+    private final Integer subscriptionId;
+    private final String flightNumber;
+    private final String endpoint;
+    private final String p256dh;
+    private final String auth;
+}
@@ -0,0 +1,30 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.CollectionVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface CollectionVersionRepository extends JpaRepository<CollectionVersion, String> {
+
+    // 🏷 Чтение версии — одна строка по первичному ключу
+    @Query("SELECT v.version FROM CollectionVersion v WHERE v.name = :name")
+    Optional<Long> findVersion(@Param("name") String name);
+
+    // ➕ Версия растёт в транзакции записи: строка блокируется до коммита, читатели видят только закоммиченное
+    @Modifying
+    @Query("UPDATE CollectionVersion v SET v.version = v.version + 1 WHERE v.name = :name")
+    int bump(@Param("name") String name);
+
+    // При гонке стартующих узлов второй получит нарушение первичного ключа
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO collection_versions (name, version) VALUES (:name, 0)", nativeQuery = true)
+    int insert(@Param("name") String name);
+}
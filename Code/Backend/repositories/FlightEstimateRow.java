@@ -0,0 +1,13 @@
+package com.example.lowflightzone.repositories;
+
+import java.time.LocalDateTime;
+
+/**
+ * Расчётные времена рейса после SQL-пересчёта — по ним ставится следующий переход.
+ */
+public record FlightEstimateRow(
+        Integer id,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival
+) {
+}
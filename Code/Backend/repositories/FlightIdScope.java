@@ -0,0 +1,34 @@
+package com.example.lowflightzone.repositories;
+
+import jakarta.persistence.Query;
+
+import java.util.Collection;
+
+/**
+ * Набор рейсов для пакетных запросов: диапазон id (полный пересчёт по частям)
+ * или явный список id (наступившие переходы). Алиас сущности в запросе — f.
+ */
+public record FlightIdScope(Integer fromId, Integer toId, Collection<Integer> ids) {
+
+    public static FlightIdScope range(Integer fromId, Integer toId) {
+        return new FlightIdScope(fromId, toId, null);
+    }
+
+    public static FlightIdScope of(Collection<Integer> ids) {
+        return new FlightIdScope(null, null, ids);
+    }
+
+    String predicate() {
+        return ids != null ? "f.id IN :ids" : "f.id BETWEEN :fromId AND :toId";
+    }
+
+    <Q extends Query> Q bind(Q query) {
+        if (ids != null) {
+            query.setParameter("ids", ids);
+        } else {
+            query.setParameter("fromId", fromId);
+            query.setParameter("toId", toId);
+        }
+        return query;
+    }
+}
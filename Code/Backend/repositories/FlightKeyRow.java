@@ -0,0 +1,18 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ключевые поля существующего рейса для upsert при импорте:
+ * id для UPDATE и значения, от которых зависит уведомление подписчиков.
+ */
+public record FlightKeyRow(
+        Integer id,
+        String flightNumber,
+        Flight.FlightStatus status,
+        LocalDateTime scheduledDeparture,
+        Integer activeSubscriptionCount
+) {
+}
@@ -0,0 +1,42 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Динамические запросы по рейсам (Criteria API), подмешиваются в {@link FlightRepository}.
+ */
+public interface FlightQueryRepository {
+
+    /**
+     * Страница рейсов с keyset-пагинацией по (scheduledDeparture, id).
+     * Фильтры с null-значением не применяются; курсор (afterDeparture, afterId) — последняя строка предыдущей страницы.
+     * Возвращает плоские строки {@link FlightRow}, сущности не загружаются.
+     */
+    List<FlightRow> findPage(String departureAirport,
+                             String arrivalAirport,
+                             Flight.FlightStatus status,
+                             LocalDateTime afterDeparture,
+                             Integer afterId,
+                             boolean descending,
+                             int limit);
+
+    /**
+     * Пересчёт статусов набором bulk UPDATE на стороне БД, без загрузки строк в Java.
+     * Повторяет правила {@code FlightStatusCalculator.evaluate}: расчётные времена, сброс и установка
+     * фактических, статус. Каждая изменённая строка получает last_updated = mark и случайную
+     * метку прогона recalc_run, по которой затем выбираются её id (совпадение времени с чужой
+     * записью в ту же секунду не даёт ложных изменений).
+     *
+     * @return id изменённых рейсов
+     */
+    List<Integer> bulkRecalculate(FlightIdScope scope, LocalDateTime now, LocalDateTime mark);
+
+    /** Число рейсов в наборе — сколько строк просмотрел SQL-пересчёт (в диапазоне id бывают дыры) */
+    long countInScope(FlightIdScope scope);
+
+    /** Расчётные времена неотменённых рейсов, у которых вылет или прилёт ещё впереди */
+    List<FlightEstimateRow> findUpcomingEstimates(FlightIdScope scope, LocalDateTime now);
+}
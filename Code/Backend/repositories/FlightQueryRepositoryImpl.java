@@ -0,0 +1,195 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class FlightQueryRepositoryImpl implements FlightQueryRepository {
+
+    // 🧮 Фрагменты SQL-пересчёта; после первого UPDATE расчётные времена неотменённых рейсов
+    // равны расписанию + задержке, поэтому дальше сравнение идёт с ними
+    private static final String DELAY = "coalesce(f.delayMinutes, 0)";
+    private static final String ACTIVE = "(f.status IS NULL OR f.status <> :cancelled)";
+    private static final String ARRIVED = "(f.actualArrival IS NOT NULL AND :now > f.actualArrival)";
+    private static final String NOT_ARRIVED = "(f.actualArrival IS NULL OR :now <= f.actualArrival)";
+    private static final String DEPARTED = "(f.actualDeparture IS NOT NULL AND :now > f.actualDeparture)";
+    private static final String NOT_DEPARTED = "(f.actualDeparture IS NULL OR :now <= f.actualDeparture)";
+
+    private static final List<String> RECALCULATION_STEPS = List.of(
+            // 1. estimated = scheduled + delay
+            "UPDATE Flight f SET f.estimatedDeparture = f.scheduledDeparture + (" + DELAY + ") minute, "
+                    + "f.estimatedArrival = f.scheduledArrival + (" + DELAY + ") minute, "
+                    + "f.lastUpdated = :mark, f.recalcRun = :run "
+                    + "WHERE %s AND " + ACTIVE + " AND ("
+                    + mismatch("f.estimatedDeparture", "f.scheduledDeparture") + " OR "
+                    + mismatch("f.estimatedArrival", "f.scheduledArrival") + ")",
+            // 2. Сбрасываем actual, если вылет или прилёт ещё не наступили
+            "UPDATE Flight f SET f.actualDeparture = NULL, f.lastUpdated = :mark, f.recalcRun = :run "
+                    + "WHERE %s AND " + ACTIVE + " AND f.actualDeparture IS NOT NULL "
+                    + "AND f.estimatedDeparture IS NOT NULL AND :now < f.estimatedDeparture",
+            "UPDATE Flight f SET f.actualArrival = NULL, f.lastUpdated = :mark, f.recalcRun = :run "
+                    + "WHERE %s AND " + ACTIVE + " AND f.actualArrival IS NOT NULL "
+                    + "AND f.estimatedArrival IS NOT NULL AND :now < f.estimatedArrival",
+            // 3–4. Устанавливаем actual, когда момент прошёл
+            "UPDATE Flight f SET f.actualDeparture = f.estimatedDeparture, f.lastUpdated = :mark, f.recalcRun = :run "
+                    + "WHERE %s AND " + ACTIVE + " AND " + DELAY + " >= 0 "
+                    + "AND f.estimatedDeparture IS NOT NULL AND :now > f.estimatedDeparture "
+                    + "AND (f.actualDeparture IS NULL OR f.actualDeparture <> f.estimatedDeparture)",
+            "UPDATE Flight f SET f.actualArrival = f.estimatedArrival, f.lastUpdated = :mark, f.recalcRun = :run "
+                    + "WHERE %s AND " + ACTIVE + " AND " + DELAY + " >= 0 "
+                    + "AND f.estimatedArrival IS NOT NULL AND :now > f.estimatedArrival "
+                    + "AND (f.actualArrival IS NULL OR f.actualArrival <> f.estimatedArrival)",
+            // 5. Статус: ARRIVED > DEPARTED > DELAYED / SCHEDULED
+            statusStep(":arrived", ARRIVED),
+            statusStep(":departed", NOT_ARRIVED + " AND " + DEPARTED),
+            statusStep(":delayed", NOT_ARRIVED + " AND " + NOT_DEPARTED + " AND " + DELAY + " > 0"),
+            statusStep(":scheduled", NOT_ARRIVED + " AND " + NOT_DEPARTED + " AND " + DELAY + " <= 0")
+    );
+
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FlightRow> findPage(String departureAirport,
+                                    String arrivalAirport,
+                                    Flight.FlightStatus status,
+                                    LocalDateTime afterDeparture,
+                                    Integer afterId,
+                                    boolean descending,
+                                    int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<FlightRow> query = cb.createQuery(FlightRow.class);
+        Root<Flight> flight = query.from(Flight.class);
+        // Коды аэропортов — FK-колонки самой таблицы flights, join не нужен
+        Path<String> dep = flight.get("departureAirport").get("iataCode");
+        Path<String> arr = flight.get("arrivalAirport").get("iataCode");
+
+        Path<LocalDateTime> departure = flight.get("scheduledDeparture");
+        Path<Integer> id = flight.get("id");
+
+        // 📅 Рейсы без времени вылета не участвуют в упорядоченной выдаче
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.isNotNull(departure));
+
+        if (departureAirport != null) {
+            predicates.add(cb.equal(dep, departureAirport));
+        }
+        if (arrivalAirport != null) {
+            predicates.add(cb.equal(arr, arrivalAirport));
+        }
+        if (status != null) {
+            predicates.add(cb.equal(flight.get("status"), status));
+        }
+
+        // 🔑 Keyset: строго после (afterDeparture, afterId) в выбранном направлении
+        if (afterDeparture != null && afterId != null) {
+            if (descending) {
+                predicates.add(cb.or(
+                        cb.lessThan(departure, afterDeparture),
+                        cb.and(cb.equal(departure, afterDeparture), cb.lessThan(id, afterId))
+                ));
+            } else {
+                predicates.add(cb.or(
+                        cb.greaterThan(departure, afterDeparture),
+                        cb.and(cb.equal(departure, afterDeparture), cb.greaterThan(id, afterId))
+                ));
+            }
+        }
+
+        query.select(cb.construct(FlightRow.class,
+                        id, flight.get("flightNumber"), flight.get("airline"),
+                        dep, arr,
+                        departure, flight.get("scheduledArrival"),
+                        flight.get("estimatedDeparture"), flight.get("estimatedArrival"),
+                        flight.get("actualDeparture"), flight.get("actualArrival"),
+                        flight.get("status"), flight.get("delayMinutes"),
+                        flight.get("terminal"), flight.get("gate"),
+                        flight.get("lastUpdated"), flight.get("activeSubscriptionCount")))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(descending
+                        ? List.of(cb.desc(departure), cb.desc(id))
+                        : List.of(cb.asc(departure), cb.asc(id)));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<Integer> bulkRecalculate(FlightIdScope scope, LocalDateTime now, LocalDateTime mark) {
+        // Случайная метка прогона не совпадёт с чужой записью, в отличие от времени
+        long run = ThreadLocalRandom.current().nextLong();
+        for (String step : RECALCULATION_STEPS) {
+            Query update = entityManager.createQuery(step.formatted(scope.predicate()));
+            scope.bind(update);
+            bindRecalculationParameters(update, step, now, mark);
+            update.setParameter("run", run);
+            update.executeUpdate();
+        }
+        return scope.bind(entityManager.createQuery(
+                        "SELECT f.id FROM Flight f WHERE " + scope.predicate() + " AND f.recalcRun = :run",
+                        Integer.class))
+                .setParameter("run", run)
+                .getResultList();
+    }
+
+    @Override
+    public long countInScope(FlightIdScope scope) {
+        return scope.bind(entityManager.createQuery(
+                        "SELECT COUNT(f) FROM Flight f WHERE " + scope.predicate(), Long.class))
+                .getSingleResult();
+    }
+
+    @Override
+    public List<FlightEstimateRow> findUpcomingEstimates(FlightIdScope scope, LocalDateTime now) {
+        return scope.bind(entityManager.createQuery("""
+                        SELECT new com.example.lowflightzone.repositories.FlightEstimateRow(
+                            f.id, f.estimatedDeparture, f.estimatedArrival)
+                        FROM Flight f
+                        WHERE %s AND %s AND (f.estimatedDeparture >= :now OR f.estimatedArrival >= :now)
+                        """.formatted(scope.predicate(), ACTIVE), FlightEstimateRow.class))
+                .setParameter("cancelled", Flight.FlightStatus.CANCELLED)
+                .setParameter("now", now)
+                .getResultList();
+    }
+
+    // Шаги используют разные наборы параметров — привязываем только упомянутые
+    private static void bindRecalculationParameters(Query update, String step, LocalDateTime now, LocalDateTime mark) {
+        update.setParameter("cancelled", Flight.FlightStatus.CANCELLED);
+        update.setParameter("mark", mark);
+        if (step.contains(":now")) {
+            update.setParameter("now", now);
+        }
+        for (Flight.FlightStatus status : List.of(Flight.FlightStatus.ARRIVED, Flight.FlightStatus.DEPARTED,
+                Flight.FlightStatus.DELAYED, Flight.FlightStatus.SCHEDULED)) {
+            String name = status.name().toLowerCase();
+            if (step.contains(":" + name)) {
+                update.setParameter(name, status);
+            }
+        }
+    }
+
+    /** Расчётное время не совпадает с расписанием + задержкой (с учётом null) */
+    private static String mismatch(String estimated, String scheduled) {
+        return "(" + scheduled + " IS NULL AND " + estimated + " IS NOT NULL) OR (" + scheduled + " IS NOT NULL AND ("
+                + estimated + " IS NULL OR " + estimated + " <> " + scheduled + " + (" + DELAY + ") minute))";
+    }
+
+    private static String statusStep(String statusParameter, String condition) {
+        return "UPDATE Flight f SET f.status = " + statusParameter + ", f.lastUpdated = :mark, f.recalcRun = :run "
+                + "WHERE %s AND " + ACTIVE + " AND " + condition
+                + " AND (f.status IS NULL OR f.status <> " + statusParameter + ")";
+    }
+}
@@ -1,21 +1,34 @@
 package com.example.lowflightzone.repositories;
 
 import com.example.lowflightzone.entity.Flight;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface FlightRepository extends JpaRepository<Flight, Integer> {
+public interface FlightRepository extends JpaRepository<Flight, Integer>, FlightQueryRepository {
 
     Optional<Flight> findByFlightNumber(String flightNumber);
 
     boolean existsByFlightNumber(String flightNumber);
 
+    // 🏷 Версия рейса для ETag / Last-Modified без загрузки сущности
+    Optional<FlightVersionView> findVersionById(Integer id);
+
+    Optional<FlightVersionView> findVersionByFlightNumber(String flightNumber);
+
     List<Flight> findByFlightNumberContainingIgnoreCaseOrDepartureAirport_CityContainingIgnoreCaseOrArrivalAirport_CityContainingIgnoreCaseOrDepartureAirport_IataCodeContainingIgnoreCaseOrArrivalAirport_IataCodeContainingIgnoreCaseOrDepartureAirport_NameContainingIgnoreCaseOrArrivalAirport_NameContainingIgnoreCase(
             String flightNumber,
             String depCity,
@@ -30,10 +43,137 @@ public interface FlightRepository extends JpaRepository<Flight, Integer> {
     SELECT f FROM Flight f
     LEFT JOIN FETCH f.departureAirport
     LEFT JOIN FETCH f.arrivalAirport
-    LEFT JOIN FETCH f.subscriptions s
-    LEFT JOIN FETCH s.user
     WHERE f.id = :id
 """)
     Optional<Flight> findByIdWithDetails(@Param("id") Integer id);
 
+    // 📋 Плоские строки по списку id (порядок не гарантирован — упорядочивает вызывающий)
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightRow(
+        f.id, f.flightNumber, f.airline,
+        f.departureAirport.iataCode, f.arrivalAirport.iataCode,
+        f.scheduledDeparture, f.scheduledArrival, f.estimatedDeparture, f.estimatedArrival,
+        f.actualDeparture, f.actualArrival, f.status, f.delayMinutes, f.terminal, f.gate,
+        f.lastUpdated, f.activeSubscriptionCount)
+    FROM Flight f
+    WHERE f.id IN :ids
+""")
+    List<FlightRow> findRowsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // 📚 Страница плоских строк по возрастанию id — для построения индексов в памяти без загрузки сущностей
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightRow(
+        f.id, f.flightNumber, f.airline,
+        f.departureAirport.iataCode, f.arrivalAirport.iataCode,
+        f.scheduledDeparture, f.scheduledArrival, f.estimatedDeparture, f.estimatedArrival,
+        f.actualDeparture, f.actualArrival, f.status, f.delayMinutes, f.terminal, f.gate,
+        f.lastUpdated, f.activeSubscriptionCount)
+    FROM Flight f
+    WHERE f.id > :afterId
+    ORDER BY f.id
+""")
+    List<FlightRow> findRowsAfterId(@Param("afterId") Integer afterId, Pageable pageable);
+
+    // 📋 То же по номерам рейсов
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightRow(
+        f.id, f.flightNumber, f.airline,
+        f.departureAirport.iataCode, f.arrivalAirport.iataCode,
+        f.scheduledDeparture, f.scheduledArrival, f.estimatedDeparture, f.estimatedArrival,
+        f.actualDeparture, f.actualArrival, f.status, f.delayMinutes, f.terminal, f.gate,
+        f.lastUpdated, f.activeSubscriptionCount)
+    FROM Flight f
+    WHERE f.flightNumber IN :numbers
+""")
+    List<FlightRow> findRowsByFlightNumberIn(@Param("numbers") Collection<String> numbers);
+
+    // 📥 Импорт: какие номера уже есть в БД (одним запросом на пачку)
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightKeyRow(
+        f.id, f.flightNumber, f.status, f.scheduledDeparture, f.activeSubscriptionCount)
+    FROM Flight f
+    WHERE f.flightNumber IN :numbers
+""")
+    List<FlightKeyRow> findKeysByFlightNumberIn(@Param("numbers") Collection<String> numbers);
+
+    List<Flight> findAllByFlightNumberIn(Collection<String> flightNumbers);
+
+    // 📤 Курсорная выгрузка всей таблицы: драйвер читает по 500 строк, сущности только для чтения
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+    SELECT f FROM Flight f
+    JOIN FETCH f.departureAirport
+    JOIN FETCH f.arrivalAirport
+    ORDER BY f.id
+""")
+    Stream<Flight> streamAllForExport();
+
+    // 🧮 Пересчёт статусов: диапазон id и состояние рейсов без аэропортов и подписок
+    @Query("SELECT MIN(f.id) FROM Flight f")
+    Integer findMinId();
+
+    @Query("SELECT MAX(f.id) FROM Flight f")
+    Integer findMaxId();
+
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightStateRow(
+        f.id, f.status, f.delayMinutes, f.scheduledDeparture, f.scheduledArrival,
+        f.estimatedDeparture, f.estimatedArrival, f.actualDeparture, f.actualArrival, f.lastUpdated)
+    FROM Flight f
+    WHERE f.id BETWEEN :fromId AND :toId
+""")
+    List<FlightStateRow> findStatesByIdBetween(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightStateRow(
+        f.id, f.status, f.delayMinutes, f.scheduledDeparture, f.scheduledArrival,
+        f.estimatedDeparture, f.estimatedArrival, f.actualDeparture, f.actualArrival, f.lastUpdated)
+    FROM Flight f
+    WHERE f.id IN :ids
+""")
+    List<FlightStateRow> findStatesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // 🔁 Рейсы, изменённые после момента since (в том числе на других узлах)
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.FlightStateRow(
+        f.id, f.status, f.delayMinutes, f.scheduledDeparture, f.scheduledArrival,
+        f.estimatedDeparture, f.estimatedArrival, f.actualDeparture, f.actualArrival, f.lastUpdated)
+    FROM Flight f
+    WHERE f.lastUpdated > :since
+""")
+    List<FlightStateRow> findStatesByLastUpdatedAfter(@Param("since") LocalDateTime since);
+
+    // ➕➖ Атомарное изменение счётчика активных подписок
+    @Modifying
+    @Query("UPDATE Flight f SET f.activeSubscriptionCount = COALESCE(f.activeSubscriptionCount, 0) + :delta " +
+            "WHERE f.id = :flightId")
+    int adjustActiveSubscriptionCount(@Param("flightId") Integer flightId, @Param("delta") int delta);
+
+    // 🔄 Сверка счётчика с фактическим числом ACTIVE-подписок (только расходящиеся строки)
+    @Modifying
+    @Query(value = """
+    UPDATE flights f
+    SET active_subscription_count = (
+        SELECT COUNT(*) FROM flight_subscriptions s
+        WHERE s.flight_id = f.id AND s.status = 'ACTIVE')
+    WHERE COALESCE(f.active_subscription_count, -1) <> (
+        SELECT COUNT(*) FROM flight_subscriptions s
+        WHERE s.flight_id = f.id AND s.status = 'ACTIVE')
+""", nativeQuery = true)
+    int reconcileActiveSubscriptionCounts();
+
+    // 🔢 Точный пересчёт счётчика для заданных рейсов, например после отключения мёртвых подписок
+    @Modifying
+    @Query(value = """
+    UPDATE flights f
+    SET active_subscription_count = (
+        SELECT COUNT(*) FROM flight_subscriptions s
+        WHERE s.flight_id = f.id AND s.status = 'ACTIVE')
+    WHERE f.id IN (:flightIds)
+""", nativeQuery = true)
+    int recountActiveSubscriptions(@Param("flightIds") Collection<Integer> flightIds);
+
 }
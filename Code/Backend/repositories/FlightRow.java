@@ -0,0 +1,34 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+
+/**
+ * Плоская строка рейса для списковых выдач; аэропорты — только коды IATA
+ * (остальное подставляется из справочника {@link com.example.lowflightzone.services.AirportCatalog}).
+ * Заполняется конструктор-выражением JPQL: без managed-сущностей,
+ * снимков для dirty checking и догрузки EAGER-связей.
+ */
+public record FlightRow(
+        Integer id,
+        String flightNumber,
+        String airline,
+
+        String departureIata,
+        String arrivalIata,
+
+        LocalDateTime scheduledDeparture,
+        LocalDateTime scheduledArrival,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        LocalDateTime actualDeparture,
+        LocalDateTime actualArrival,
+        Flight.FlightStatus status,
+        Integer delayMinutes,
+        String terminal,
+        String gate,
+        LocalDateTime lastUpdated,
+        Integer activeSubscriptionCount
+) {
+}
@@ -0,0 +1,23 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+
+/**
+ * Поля рейса, от которых зависит пересчёт статуса, плюс last_updated
+ * для защиты пакетной записи от параллельных правок.
+ */
+public record FlightStateRow(
+        Integer id,
+        Flight.FlightStatus status,
+        Integer delayMinutes,
+        LocalDateTime scheduledDeparture,
+        LocalDateTime scheduledArrival,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        LocalDateTime actualDeparture,
+        LocalDateTime actualArrival,
+        LocalDateTime lastUpdated
+) {
+}
@@ -2,12 +2,16 @@ package com.example.lowflightzone.repositories;
 
 import com.example.lowflightzone.entity.FlightSubscription;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface FlightSubscriptionRepository extends JpaRepository<FlightSubscription, Integer> {
@@ -55,6 +59,43 @@ public interface FlightSubscriptionRepository extends JpaRepository<FlightSubscr
 
 
 
+    // id рейсов, на которые пользователь активно подписан (одним запросом для всей выдачи)
+    @Query("SELECT fs.flight.id FROM FlightSubscription fs " +
+            "WHERE lower(fs.user.email) = lower(:userEmail) AND fs.status = 'ACTIVE'")
+    Set<Integer> findActiveFlightIdsByUserEmail(@Param("userEmail") String userEmail);
+
+    // 📋 Плоские строки подписок для списков (подписка + рейс + пользователь одним запросом)
+    String SUBSCRIPTION_ROW_SELECT = """
+    SELECT new com.example.lowflightzone.repositories.SubscriptionRow(
+        fs.id, fs.status, fs.notificationTypes, fs.createdAt, fs.lastNotifiedAt,
+        fs.notifyBeforeHours, fs.minDelayMinutes,
+        f.id, f.flightNumber, f.airline, f.status,
+        f.scheduledDeparture, f.scheduledArrival, f.estimatedDeparture, f.estimatedArrival,
+        f.activeSubscriptionCount,
+        u.id, u.email, u.firstName, u.lastName)
+    FROM FlightSubscription fs
+    JOIN fs.flight f
+    JOIN fs.user u
+""";
+
+    @Query(SUBSCRIPTION_ROW_SELECT + "WHERE u.email = :userEmail AND fs.status = :status")
+    List<SubscriptionRow> findRowsByUserEmailAndStatus(
+            @Param("userEmail") String userEmail,
+            @Param("status") FlightSubscription.SubscriptionStatus status
+    );
+
+    @Query(SUBSCRIPTION_ROW_SELECT + "WHERE u.id = :userId AND fs.status = :status")
+    List<SubscriptionRow> findRowsByUserIdAndStatus(
+            @Param("userId") Integer userId,
+            @Param("status") FlightSubscription.SubscriptionStatus status
+    );
+
+    @Query(SUBSCRIPTION_ROW_SELECT + "WHERE f.flightNumber = :flightNumber AND fs.status = :status")
+    List<SubscriptionRow> findRowsByFlightNumberAndStatus(
+            @Param("flightNumber") String flightNumber,
+            @Param("status") FlightSubscription.SubscriptionStatus status
+    );
+
     // Активные подписки пользователя
     @Query("SELECT fs FROM FlightSubscription fs WHERE fs.user.id = :userId AND fs.status = 'ACTIVE'")
     List<FlightSubscription> findActiveSubscriptionsByUserId(Integer userId);
@@ -70,5 +111,21 @@ public interface FlightSubscriptionRepository extends JpaRepository<FlightSubscr
 
     List<FlightSubscription> findAllByFlightIdAndStatus(Integer flightId, FlightSubscription.SubscriptionStatus status);
 
+    // 🪦 Рейсы, у которых есть активные подписки на недоступные endpoint'ы
+    @Query("SELECT DISTINCT fs.flight.id FROM FlightSubscription fs " +
+            "WHERE fs.endpoint IN :endpoints AND fs.status = 'ACTIVE'")
+    List<Integer> findActiveFlightIdsByEndpointIn(@Param("endpoints") Collection<String> endpoints);
+
+    // Все активные подписки на недоступный endpoint — одним UPDATE: браузер мог подписаться на несколько рейсов
+    @Modifying
+    @Query("UPDATE FlightSubscription fs " +
+            "SET fs.status = com.example.lowflightzone.entity.FlightSubscription.SubscriptionStatus.INACTIVE " +
+            "WHERE fs.endpoint IN :endpoints AND fs.status = 'ACTIVE'")
+    int deactivateByEndpointIn(@Param("endpoints") Collection<String> endpoints);
+
+    @Modifying
+    @Query("UPDATE FlightSubscription fs SET fs.lastNotifiedAt = :now WHERE fs.id IN :ids")
+    int markNotified(@Param("ids") Collection<Integer> ids, @Param("now") LocalDateTime now);
+
 
 }
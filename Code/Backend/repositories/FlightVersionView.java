@@ -0,0 +1,12 @@
+package com.example.lowflightzone.repositories;
+
+import java.time.LocalDateTime;
+
+/**
+ * Лёгкая проекция рейса для условных GET: только то, от чего зависит ETag.
+ */
+public interface FlightVersionView {
+    Integer getId();
+    LocalDateTime getLastUpdated();
+    Integer getActiveSubscriptionCount();
+}
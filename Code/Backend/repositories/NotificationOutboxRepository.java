@@ -0,0 +1,112 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.NotificationOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    // 📬 По строке на каждую активную подписку с ключами WebPush, у которой ещё нет ожидающей, —
+    // одним INSERT ... SELECT. Получившим уведомление недавно отправка откладывается до :deferredUntil
+    @Modifying
+    @Query(value = """
+    INSERT INTO notification_outbox (type, subscription_id, flight_id, changed_fields, status, attempts,
+        next_attempt_at, created_at)
+    SELECT 'FLIGHT_UPDATE', s.id, s.flight_id, :changedFields, 'PENDING', 0,
+        CASE WHEN s.last_notified_at > :recentSince THEN :deferredUntil ELSE :now END, :now
+    FROM flight_subscriptions s
+    WHERE s.flight_id = :flightId AND s.status = 'ACTIVE'
+      AND s.endpoint <> '' AND s.p256dh <> '' AND s.auth <> ''
+      AND NOT EXISTS (
+        SELECT 1 FROM notification_outbox o
+        WHERE o.subscription_id = s.id AND o.type = 'FLIGHT_UPDATE' AND o.status = 'PENDING'
+          AND (o.claimed_until IS NULL OR o.claimed_until < :now))
+""", nativeQuery = true)
+    int enqueueFlightUpdate(@Param("flightId") Integer flightId, @Param("changedFields") String changedFields,
+                            @Param("now") LocalDateTime now, @Param("recentSince") LocalDateTime recentSince,
+                            @Param("deferredUntil") LocalDateTime deferredUntil);
+
+    // 🔀 Наборы полей ожидающих (не захваченных) уведомлений рейса — обычно один-два
+    @Query(value = """
+    SELECT DISTINCT changed_fields FROM notification_outbox
+    WHERE flight_id = :flightId AND type = 'FLIGHT_UPDATE' AND status = 'PENDING'
+      AND (claimed_until IS NULL OR claimed_until < :now)
+""", nativeQuery = true)
+    List<String> findPendingChangedFields(@Param("flightId") Integer flightId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = """
+    UPDATE notification_outbox SET changed_fields = :merged
+    WHERE flight_id = :flightId AND type = 'FLIGHT_UPDATE' AND status = 'PENDING'
+      AND (claimed_until IS NULL OR claimed_until < :now) AND changed_fields = :current
+""", nativeQuery = true)
+    int mergePendingChangedFields(@Param("flightId") Integer flightId, @Param("current") String current,
+                                  @Param("merged") String merged, @Param("now") LocalDateTime now);
+
+    @Query(value = """
+    SELECT COUNT(*) FROM notification_outbox
+    WHERE flight_id = :flightId AND type = 'FLIGHT_UPDATE' AND status = 'PENDING'
+      AND (claimed_until IS NULL OR claimed_until < :now)
+""", nativeQuery = true)
+    long countPending(@Param("flightId") Integer flightId, @Param("now") LocalDateTime now);
+
+    // 🔐 Выбор пачки готовых строк под блокировку; строки, заблокированные другим воркером,
+    // пропускаются (SKIP LOCKED: PostgreSQL, MySQL 8, H2 2.x), а не ожидаются
+    @Query(value = """
+    SELECT id FROM notification_outbox
+    WHERE status = 'PENDING' AND next_attempt_at <= :now
+      AND (claimed_until IS NULL OR claimed_until < :now)
+    ORDER BY id
+    LIMIT :limit
+    FOR UPDATE SKIP LOCKED
+""", nativeQuery = true)
+    List<Long> lockClaimable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Условия повторены: строка могла смениться между выборкой и захватом без блокировки (другие СУБД)
+    @Modifying
+    @Query(value = """
+    UPDATE notification_outbox SET claimed_by = :token, claimed_until = :until
+    WHERE id IN (:ids) AND status = 'PENDING'
+      AND (claimed_until IS NULL OR claimed_until < :now)
+""", nativeQuery = true)
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token,
+              @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    @Query("""
+    SELECT new com.example.lowflightzone.repositories.OutboxDeliveryRow(
+        o.id, o.flightId, o.subscriptionId, o.changedFields, o.attempts,
+        s.status, s.endpoint, s.p256dh, s.auth)
+    FROM NotificationOutbox o
+    LEFT JOIN FlightSubscription s ON s.id = o.subscriptionId
+    WHERE o.claimedBy = :token
+    ORDER BY o.id
+""")
+    List<OutboxDeliveryRow> findClaimed(@Param("token") String token);
+
+    @Modifying
+    @Query("""
+    UPDATE NotificationOutbox o
+    SET o.status = com.example.lowflightzone.entity.NotificationOutbox.Status.DONE,
+        o.deliveredAt = :now, o.claimedBy = null, o.claimedUntil = null
+    WHERE o.id IN :ids AND o.claimedBy = :token
+""")
+    int markDone(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    @Query("SELECT o.status, COUNT(o) FROM NotificationOutbox o GROUP BY o.status")
+    List<Object[]> countByStatus();
+
+    @Modifying
+    @Query("""
+    DELETE FROM NotificationOutbox o
+    WHERE o.status = com.example.lowflightzone.entity.NotificationOutbox.Status.DONE AND o.deliveredAt < :before
+""")
+    int deleteDeliveredBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,20 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.FlightSubscription;
+
+/**
+ * Захваченная строка outbox вместе с ключами WebPush подписки.
+ * Поля подписки null, если её уже удалили.
+ */
+public record OutboxDeliveryRow(
+        Long id,
+        Integer flightId,
+        Integer subscriptionId,
+        String changedFields,
+        int attempts,
+        FlightSubscription.SubscriptionStatus subscriptionStatus,
+        String endpoint,
+        String p256dh,
+        String auth
+) {
+}
@@ -0,0 +1,39 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.SchedulerLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLock, String> {
+
+    // 🔐 Продление своей аренды или захват истёкшей — одним атомарным UPDATE
+    @Modifying
+    @Query("""
+    UPDATE SchedulerLock l
+    SET l.acquiredAt = CASE WHEN l.owner = :owner THEN l.acquiredAt ELSE :now END,
+        l.owner = :owner,
+        l.expiresAt = :expiresAt
+    WHERE l.name = :name AND (l.owner = :owner OR l.expiresAt < :now)
+""")
+    int renewOrTakeOver(@Param("name") String name, @Param("owner") String owner,
+                        @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE SchedulerLock l SET l.expiresAt = :now WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    // ➕ Первый захват: строки ещё нет; при гонке второй узел получит нарушение первичного ключа
+    @Modifying
+    @Query(value = """
+    INSERT INTO scheduler_locks (name, owner, expires_at, acquired_at)
+    VALUES (:name, :owner, :expiresAt, :now)
+""", nativeQuery = true)
+    int insert(@Param("name") String name, @Param("owner") String owner,
+               @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+}
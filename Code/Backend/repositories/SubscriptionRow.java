@@ -0,0 +1,36 @@
+package com.example.lowflightzone.repositories;
+
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.entity.FlightSubscription;
+
+import java.time.LocalDateTime;
+
+/**
+ * Плоская строка подписки для списков: поля подписки, краткие поля рейса и пользователя
+ * одним запросом вместо ленивой догрузки flight/user по каждой строке.
+ */
+public record SubscriptionRow(
+        Integer id,
+        FlightSubscription.SubscriptionStatus status,
+        String notificationTypes,
+        LocalDateTime createdAt,
+        LocalDateTime lastNotifiedAt,
+        Integer notifyBeforeHours,
+        Integer minDelayMinutes,
+
+        Integer flightId,
+        String flightNumber,
+        String airline,
+        Flight.FlightStatus flightStatus,
+        LocalDateTime scheduledDeparture,
+        LocalDateTime scheduledArrival,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        Integer activeSubscriptionCount,
+
+        Integer userId,
+        String userEmail,
+        String userFirstName,
+        String userLastName
+) {
+}
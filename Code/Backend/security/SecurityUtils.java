@@ -21,6 +21,13 @@ public class SecurityUtils {
      * 📌 Получить текущего аутентифицированного пользователя
      */
     public Optional<User> getCurrentUser() {
+        return getCurrentUserEmail().flatMap(userDao::findByEmail);
+    }
+
+    /**
+     * 📌 Email текущего пользователя из контекста безопасности (без запроса в БД)
+     */
+    public Optional<String> getCurrentUserEmail() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
         if (authentication == null || !authentication.isAuthenticated() ||
@@ -29,11 +36,11 @@ public class SecurityUtils {
         }
 
         if (authentication.getPrincipal() instanceof UserDetails userDetails) {
-            return userDao.findByEmail(userDetails.getUsername());
+            return Optional.of(userDetails.getUsername());
         }
 
         if (authentication.getPrincipal() instanceof String username) {
-            return userDao.findByEmail(username);
+            return Optional.of(username);
         }
 
         return Optional.empty();
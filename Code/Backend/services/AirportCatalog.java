@@ -0,0 +1,216 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.AirportDao;
+import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.entity.Airport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Справочник аэропортов в памяти: неизменяемый снимок, который подменяется целиком.
+ * <p>
+ * Читатели не берут блокировок — достаточно одной volatile-ссылки на снимок.
+ * Экземпляры {@link AirportDto} в снимке общие для всех ответов и не допускают изменений.
+ * Промах по коду перепроверяется в БД: аэропорт мог появиться в обход {@link AirportService}
+ * (инициализатор данных, другой узел) — тогда снимок перечитывается.
+ * Отсутствие кода тоже запоминается на {@code airports.catalog.miss-ttl-ms}, чтобы поток
+ * запросов с неизвестным кодом не превращался в поток SELECT-ов.
+ */
+@Slf4j
+@Component
+public class AirportCatalog {
+
+    private final AirportDao airportDao;
+    private final long missTtlNanos;
+
+    /** Код → момент (System.nanoTime), до которого промах считается подтверждённым */
+    private final Map<String, Long> missUntilNanos = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    public AirportCatalog(AirportDao airportDao,
+                          @Value("${airports.catalog.miss-ttl-ms:30000}") long missTtlMillis) {
+        this.airportDao = airportDao;
+        this.missTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, missTtlMillis));
+    }
+
+    /** Полная перезагрузка снимка из БД */
+    public synchronized void reload() {
+        List<AirportDto> airports = airportDao.findAll().stream()
+                .map(AirportCatalog::freeze)
+                .toList();
+        snapshot = Snapshot.of(airports);
+        missUntilNanos.clear();
+        log.info("🗂 Справочник аэропортов загружен: {} шт.", airports.size());
+    }
+
+    /** Добавление/замена одного аэропорта: новый снимок собирается из текущего */
+    public synchronized AirportDto put(Airport airport) {
+        AirportDto dto = freeze(airport);
+        Map<String, AirportDto> byIata = new LinkedHashMap<>(current().byIata());
+        byIata.put(dto.getIataCode(), dto);
+        snapshot = Snapshot.of(byIata.values());
+        missUntilNanos.remove(dto.getIataCode());
+        return dto;
+    }
+
+    public Optional<AirportDto> find(String iataCode) {
+        if (iataCode == null) {
+            return Optional.empty();
+        }
+        AirportDto airport = current().byIata().get(iataCode);
+        if (airport != null) {
+            return Optional.of(airport);
+        }
+        Long missUntil = missUntilNanos.get(iataCode);
+        if (missUntil != null && missUntil - System.nanoTime() > 0) {
+            return Optional.empty();
+        }
+        Optional<AirportDto> loaded = airportDao.findByIataCode(iataCode).map(this::put);
+        if (loaded.isEmpty() && missTtlNanos > 0) {
+            missUntilNanos.put(iataCode, System.nanoTime() + missTtlNanos);
+        }
+        return loaded;
+    }
+
+    /**
+     * Общий экземпляр из справочника; для неизвестного кода — DTO только с IATA,
+     * чтобы ответ не терял ссылку на аэропорт
+     */
+    public AirportDto resolve(String iataCode) {
+        if (iataCode == null) {
+            return null;
+        }
+        return find(iataCode).orElseGet(() -> {
+            AirportDto unknown = new AirportDto();
+            unknown.setIataCode(iataCode);
+            return unknown;
+        });
+    }
+
+    /** Только снимок, без обращения к БД — для сборки DTO на горячем пути */
+    public AirportDto peek(String iataCode) {
+        return iataCode != null ? current().byIata().get(iataCode) : null;
+    }
+
+    public boolean contains(String iataCode) {
+        return find(iataCode).isPresent();
+    }
+
+    public List<AirportDto> all() {
+        return current().all();
+    }
+
+    public List<AirportDto> findByCity(String city) {
+        String needle = city.toLowerCase(Locale.ROOT);
+        return current().all().stream()
+                .filter(a -> a.getCity() != null && a.getCity().toLowerCase(Locale.ROOT).contains(needle))
+                .toList();
+    }
+
+    /** Версия содержимого снимка — для ETag справочных ответов */
+    public String version() {
+        return current().version();
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            reload();
+            s = snapshot;
+        }
+        return s;
+    }
+
+    private static AirportDto freeze(Airport airport) {
+        return new ImmutableAirportDto(airport);
+    }
+
+    private record Snapshot(Map<String, AirportDto> byIata, List<AirportDto> all, String version) {
+        static Snapshot of(Collection<AirportDto> airports) {
+            List<AirportDto> sorted = airports.stream()
+                    .sorted(Comparator.comparing(AirportDto::getIataCode))
+                    .toList();
+            Map<String, AirportDto> byIata = new LinkedHashMap<>();
+            int hash = 1;
+            for (AirportDto a : sorted) {
+                byIata.put(a.getIataCode(), a);
+                hash = 31 * hash + Objects.hash(a.getIataCode(), a.getName(), a.getCity(), a.getCountry(),
+                        a.getLatitude(), a.getLongitude(), a.getTimezone(), a.getAltitude());
+            }
+            String version = "\"a" + sorted.size() + "-" + Integer.toHexString(hash) + "\"";
+            return new Snapshot(Map.copyOf(byIata), sorted, version);
+        }
+    }
+
+    /** AirportDto только для чтения: экземпляр разделяется между всеми ответами */
+    private static final class ImmutableAirportDto extends AirportDto {
+
+        ImmutableAirportDto(Airport airport) {
+            super.setIataCode(airport.getIataCode());
+            super.setName(airport.getName());
+            super.setCity(airport.getCity());
+            super.setCountry(airport.getCountry());
+            super.setLatitude(airport.getLatitude());
+            super.setLongitude(airport.getLongitude());
+            super.setTimezone(airport.getTimezone());
+            super.setAltitude(airport.getAltitude());
+        }
+
+        @Override
+        public void setIataCode(String iataCode) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setName(String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCity(String city) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCountry(String country) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setLatitude(Double latitude) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setLongitude(Double longitude) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setTimezone(String timezone) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setAltitude(Integer altitude) {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("AirportDto из справочника неизменяем");
+        }
+    }
+}
@@ -1,41 +1,105 @@
 package com.example.lowflightzone.services;
 
 import com.example.lowflightzone.dao.AirportDao;
+import com.example.lowflightzone.dto.AirportBoardDto;
 import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.dto.NearbyAirportDto;
 import com.example.lowflightzone.entity.Airport;
 import com.example.lowflightzone.exceptions.AirportException;
+import com.example.lowflightzone.exceptions.ValidationException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class AirportService {
 
+    private static final Duration MAX_BOARD_WINDOW = Duration.ofHours(48);
+    private static final double MAX_RADIUS_KM = 5000;
+    private static final int MAX_NEAREST = 100;
+
     private final AirportDao airportDao;
+    private final FlightScheduleIndex scheduleIndex;
+    private final AirportSpatialIndex spatialIndex;
+    private final AirportCatalog airportCatalog;
+    private final StartupPhases startupPhases;
 
     @Autowired
-    public AirportService(AirportDao airportDao) {
+    public AirportService(AirportDao airportDao, FlightScheduleIndex scheduleIndex, AirportSpatialIndex spatialIndex,
+                          AirportCatalog airportCatalog, StartupPhases startupPhases) {
         this.airportDao = airportDao;
+        this.scheduleIndex = scheduleIndex;
+        this.spatialIndex = spatialIndex;
+        this.airportCatalog = airportCatalog;
+        this.startupPhases = startupPhases;
+    }
+
+    /** Загрузка справочника и построение пространственного индекса при старте */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadReferenceData() {
+        startupPhases.time("airportReferenceData", () -> {
+            airportCatalog.reload();
+            List<AirportDto> airports = airportCatalog.all();
+            spatialIndex.rebuild(airports);
+            log.info("🌍 Пространственный индекс аэропортов построен: {} шт.", airports.size());
+        });
     }
 
+    // 🗂 Чтение — из неизменяемого снимка справочника, без запросов в БД
+
     public List<AirportDto> getAllAirports() {
-        return airportDao.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return airportCatalog.all();
     }
 
     public AirportDto getAirportByCode(String iataCode) {
-        Airport airport = airportDao.findByIataCode(iataCode)
+        return airportCatalog.find(iataCode)
                 .orElseThrow(() -> new AirportException("Аэропорт не найден: " + iataCode));
-        return convertToDto(airport);
     }
 
     public List<AirportDto> getAirportsByCity(String city) {
-        // Убираем equalsIgnoreCase, используем обычный поиск
-        return airportDao.findByCity(city).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return airportCatalog.findByCity(city);
+    }
+
+    /** Версия справочника для ETag ответов /airports */
+    public String getCatalogVersion() {
+        return airportCatalog.version();
+    }
+
+    /**
+     * Табло аэропорта: вылеты или прилёты в окне [from, to] по эффективному времени.
+     * Читается из расписания в памяти, без запроса рейсов в БД.
+     */
+    public AirportBoardDto getBoard(String iataCode, String direction, LocalDateTime from, LocalDateTime to) {
+        if (!airportCatalog.contains(iataCode)) {
+            throw new AirportException("Аэропорт не найден: " + iataCode);
+        }
+        if (to.isBefore(from) || Duration.between(from, to).compareTo(MAX_BOARD_WINDOW) > 0) {
+            throw new ValidationException("Окно табло должно быть от 0 до " + MAX_BOARD_WINDOW.toHours() + " часов");
+        }
+
+        Collection<ScheduledLeg> legs = switch (direction) {
+            case "departures" -> scheduleIndex.departuresBetween(iataCode, from, to);
+            case "arrivals" -> scheduleIndex.arrivalsBetween(iataCode, from, to);
+            default -> throw new ValidationException("direction должен быть departures или arrivals");
+        };
+
+        AirportBoardDto board = new AirportBoardDto();
+        board.setAirport(iataCode);
+        board.setDirection(direction);
+        board.setFrom(from);
+        board.setTo(to);
+        board.setFlights(legs.stream()
+                .map(leg -> leg.toFlightDto(airportCatalog))
+                .collect(Collectors.toList()));
+        return board;
     }
 
     public AirportDto addAirport(AirportDto airportDto) {
@@ -45,20 +109,33 @@ public class AirportService {
 
         Airport airport = convertToEntity(airportDto);
         Airport savedAirport = airportDao.save(airport);
-        return convertToDto(savedAirport);
+        AirportDto saved = airportCatalog.put(savedAirport);
+        spatialIndex.add(saved);
+        return saved;
+    }
+
+    /** Аэропорты в радиусе radiusKm от точки (по расстоянию гаверсинусов) */
+    public List<NearbyAirportDto> getAirportsWithinRadius(double latitude, double longitude, double radiusKm) {
+        validateCoordinates(latitude, longitude);
+        if (radiusKm <= 0 || radiusKm > MAX_RADIUS_KM) {
+            throw new ValidationException("Радиус должен быть от 0 до " + (int) MAX_RADIUS_KM + " км");
+        }
+        return spatialIndex.withinRadius(latitude, longitude, radiusKm);
     }
 
-    private AirportDto convertToDto(Airport airport) {
-        AirportDto dto = new AirportDto();
-        dto.setIataCode(airport.getIataCode());
-        dto.setName(airport.getName());
-        dto.setCity(airport.getCity());
-        dto.setCountry(airport.getCountry());
-        dto.setLatitude(airport.getLatitude());
-        dto.setLongitude(airport.getLongitude());
-        dto.setTimezone(airport.getTimezone());
-        dto.setAltitude(airport.getAltitude());
-        return dto;
+    /** K ближайших к точке аэропортов */
+    public List<NearbyAirportDto> getNearestAirports(double latitude, double longitude, int k) {
+        validateCoordinates(latitude, longitude);
+        if (k <= 0 || k > MAX_NEAREST) {
+            throw new ValidationException("k должно быть от 1 до " + MAX_NEAREST);
+        }
+        return spatialIndex.nearest(latitude, longitude, k);
+    }
+
+    private void validateCoordinates(double latitude, double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new ValidationException("Некорректные координаты: " + latitude + ", " + longitude);
+        }
     }
 
     private Airport convertToEntity(AirportDto dto) {
@@ -0,0 +1,130 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.dto.NearbyAirportDto;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Пространственный индекс аэропортов: равномерная сетка 1°×1°.
+ * Запрос по радиусу обходит только ячейки, пересекающие bounding box круга,
+ * и точно фильтрует кандидатов по формуле гаверсинусов.
+ */
+@Component
+public class AirportSpatialIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    private static final double HALF_CIRCUMFERENCE_KM = Math.PI * EARTH_RADIUS_KM;
+    private static final double NEAREST_START_RADIUS_KM = 100;
+
+    private volatile Map<Long, List<Entry>> cells = new ConcurrentHashMap<>();
+
+    /** Полная перестройка: новая сетка собирается целиком и подменяется атомарно */
+    public void rebuild(Collection<AirportDto> airports) {
+        Map<Long, List<Entry>> fresh = new ConcurrentHashMap<>();
+        airports.forEach(airport -> addTo(fresh, airport));
+        cells = fresh;
+    }
+
+    public void add(AirportDto airport) {
+        addTo(cells, airport);
+    }
+
+    /** Аэропорты в радиусе radiusKm от точки, по возрастанию расстояния */
+    public List<NearbyAirportDto> withinRadius(double lat, double lon, double radiusKm) {
+        List<NearbyAirportDto> result = new ArrayList<>();
+        double latDelta = radiusKm / KM_PER_DEGREE;
+        int minLatCell = latCell(Math.max(-90, lat - latDelta));
+        int maxLatCell = latCell(Math.min(90, lat + latDelta));
+
+        // 🌐 Чем ближе к полюсу, тем шире окно по долготе; у полюса — вся широта целиком
+        double maxAbsLat = Math.min(90, Math.abs(lat) + latDelta);
+        boolean allLongitudes = maxAbsLat >= 89.999;
+        double lonDelta = allLongitudes ? 180 : latDelta / Math.cos(Math.toRadians(maxAbsLat));
+        if (lonDelta >= 180) {
+            allLongitudes = true;
+        }
+        int minLonCell = (int) Math.floor(lon - lonDelta);
+        int maxLonCell = (int) Math.floor(lon + lonDelta);
+        if (allLongitudes || maxLonCell - minLonCell >= 359) {
+            minLonCell = 0;
+            maxLonCell = 359;
+        }
+
+        Map<Long, List<Entry>> snapshot = cells;
+        for (int latC = minLatCell; latC <= maxLatCell; latC++) {
+            for (int lonC = minLonCell; lonC <= maxLonCell; lonC++) {
+                List<Entry> cell = snapshot.get(key(latC, Math.floorMod(lonC + 180, 360)));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry e : cell) {
+                    double distance = haversineKm(lat, lon, e.lat, e.lon);
+                    if (distance <= radiusKm) {
+                        result.add(toNearby(e.airport, distance));
+                    }
+                }
+            }
+        }
+        result.sort(Comparator.comparingDouble(NearbyAirportDto::getDistanceKm));
+        return result;
+    }
+
+    /** K ближайших аэропортов: радиус удваивается, пока в круг не попадёт k точек */
+    public List<NearbyAirportDto> nearest(double lat, double lon, int k) {
+        double radius = NEAREST_START_RADIUS_KM;
+        while (true) {
+            List<NearbyAirportDto> found = withinRadius(lat, lon, radius);
+            if (found.size() >= k || radius >= HALF_CIRCUMFERENCE_KM) {
+                return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+            }
+            radius = Math.min(radius * 2, HALF_CIRCUMFERENCE_KM);
+        }
+    }
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static void addTo(Map<Long, List<Entry>> target, AirportDto airport) {
+        if (airport.getLatitude() == null || airport.getLongitude() == null) {
+            return;
+        }
+        double lat = airport.getLatitude();
+        double lon = airport.getLongitude();
+        long cellKey = key(latCell(lat), Math.floorMod((int) Math.floor(lon) + 180, 360));
+        target.computeIfAbsent(cellKey, k -> new CopyOnWriteArrayList<>())
+                .add(new Entry(airport, lat, lon));
+    }
+
+    private static int latCell(double lat) {
+        return Math.min(89, (int) Math.floor(lat));
+    }
+
+    private static long key(int latCell, int lonCell) {
+        return (long) (latCell + 90) * 360 + lonCell;
+    }
+
+    private static NearbyAirportDto toNearby(AirportDto airport, double distanceKm) {
+        NearbyAirportDto dto = new NearbyAirportDto();
+        dto.setAirport(airport);
+        dto.setDistanceKm(Math.round(distanceKm * 10) / 10.0);
+        return dto;
+    }
+
+    private record Entry(AirportDto airport, double lat, double lon) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dao.FlightSubscriptionDao;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отключение подписок, чей endpoint push-сервис объявил несуществующим (404/410).
+ * <p>
+ * Endpoint принадлежит браузеру и общий для всех его подписок на рейсы, поэтому в INACTIVE
+ * переводятся все активные подписки с этим endpoint'ом — одним UPDATE на пачку,
+ * а счётчики активных подписок затронутых рейсов пересчитываются точно.
+ * При повторной подписке с новыми ключами подписка реактивируется как обычно.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeadSubscriptionPruner {
+
+    private final FlightSubscriptionDao subscriptionDao;
+    private final FlightDao flightDao;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicLong prunedEndpoints = new AtomicLong();
+    private final AtomicLong prunedSubscriptions = new AtomicLong();
+
+    @Transactional
+    public int prune(Collection<String> endpoints) {
+        if (endpoints.isEmpty()) {
+            return 0;
+        }
+        List<Integer> flightIds = subscriptionDao.findActiveFlightIdsByEndpoints(endpoints);
+        int deactivated = subscriptionDao.deactivateByEndpoints(endpoints);
+        if (deactivated == 0) {
+            return 0;
+        }
+        flightDao.recountActiveSubscriptions(flightIds);
+        flightIds.forEach(id -> eventPublisher.publishEvent(FlightChangedEvent.subscriptionsChanged(id)));
+
+        prunedEndpoints.addAndGet(endpoints.size());
+        prunedSubscriptions.addAndGet(deactivated);
+        log.info("🪦 Отключено подписок с недоступными endpoint'ами: {} ({} endpoint'ов, рейсов {})",
+                deactivated, endpoints.size(), flightIds.size());
+        return deactivated;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("prunedEndpoints", prunedEndpoints.get());
+        stats.put("prunedSubscriptions", prunedSubscriptions.get());
+        return stats;
+    }
+}
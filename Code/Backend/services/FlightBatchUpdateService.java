@@ -0,0 +1,268 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dao.FlightPatch;
+import com.example.lowflightzone.dto.FlightBatchPatchResultDto;
+import com.example.lowflightzone.dto.FlightChangeDto;
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.dto.FlightRowErrorDto;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.events.FlightsBatchChangedEvent;
+import com.example.lowflightzone.exceptions.ValidationException;
+import com.example.lowflightzone.repositories.FlightRow;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетное применение оперативных изменений (статус, задержка, терминал, гейт, времена).
+ * <p>
+ * Текущее состояние читается одной проекцией, для каждого рейса вычисляется набор
+ * изменившихся полей, а реальные изменения пишутся одним JDBC batch в одной транзакции.
+ * Уведомления пишутся в outbox той же транзакцией и рассылаются асинхронно.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlightBatchUpdateService {
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /** Поля, после изменения которых подписчикам стоит знать о рейсе */
+    private static final Set<String> NOTIFIABLE_FIELDS = Set.of(
+            "status", "delayMinutes", "gate", "terminal", "scheduledDeparture", "estimatedDeparture");
+
+    private final FlightDao flightDao;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Элемент пакета — частичный FlightDto: id или flightNumber для поиска рейса,
+     * применяются только непустые status, delayMinutes, terminal, gate,
+     * scheduledDeparture, estimatedDeparture, estimatedArrival.
+     */
+    @Transactional
+    public FlightBatchPatchResultDto patchFlights(List<FlightDto> patches) {
+        if (patches == null || patches.isEmpty()) {
+            throw new ValidationException("Пакет изменений пуст");
+        }
+        if (patches.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("В пакете больше " + MAX_BATCH_SIZE + " изменений");
+        }
+
+        FlightBatchPatchResultDto result = new FlightBatchPatchResultDto();
+        result.setRequested(patches.size());
+
+        Map<Integer, FlightRow> byId = loadCurrentState(patches);
+        Map<String, FlightRow> byNumber = byId.values().stream()
+                .collect(Collectors.toMap(FlightRow::flightNumber, Function.identity()));
+
+        // 🧮 Сливаем патчи с текущим состоянием; несколько патчей одного рейса применяются по порядку
+        Map<Integer, PendingChange> pending = new HashMap<>();
+        List<PendingChange> order = new ArrayList<>();
+        for (int i = 0; i < patches.size(); i++) {
+            FlightDto patch = patches.get(i);
+            int itemNumber = i + 1;
+            FlightRow current = patch.getId() != null ? byId.get(patch.getId()) : byNumber.get(patch.getFlightNumber());
+            if (current == null) {
+                error(result, itemNumber, patch.getFlightNumber(), "Рейс не найден: "
+                        + (patch.getId() != null ? patch.getId() : patch.getFlightNumber()));
+                continue;
+            }
+            String validationError = validate(patch);
+            if (validationError != null) {
+                error(result, itemNumber, current.flightNumber(), validationError);
+                continue;
+            }
+            PendingChange change = pending.get(current.id());
+            if (change == null) {
+                change = new PendingChange(current, itemNumber);
+                pending.put(current.id(), change);
+                order.add(change);
+            }
+            change.apply(patch);
+        }
+
+        List<PendingChange> changed = order.stream()
+                .filter(c -> !c.changedFields.isEmpty())
+                .toList();
+        result.setUnchanged(order.size() - changed.size());
+        if (changed.isEmpty()) {
+            return result;
+        }
+
+        boolean[] applied = flightDao.batchPatch(
+                changed.stream().map(PendingChange::toPatch).toList(), LocalDateTime.now());
+
+        Map<Integer, Set<String>> appliedFields = new HashMap<>();
+        for (int i = 0; i < changed.size(); i++) {
+            PendingChange change = changed.get(i);
+            if (!applied[i]) {
+                error(result, change.itemNumber, change.current.flightNumber(),
+                        "Рейс изменён параллельно, патч не применён — повторите с актуальными данными");
+                continue;
+            }
+            appliedFields.put(change.current.id(), change.changedFields);
+            result.getChanges().add(new FlightChangeDto(
+                    change.current.id(), change.current.flightNumber(), change.changedFields));
+        }
+        result.setUpdated(appliedFields.size());
+
+        publishChanges(appliedFields);
+        log.info("🛠 Пакет изменений: запрошено {}, обновлено {}, без изменений {}, ошибок {}",
+                result.getRequested(), result.getUpdated(), result.getUnchanged(), result.getFailed());
+        return result;
+    }
+
+    private Map<Integer, FlightRow> loadCurrentState(List<FlightDto> patches) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        Set<String> numbers = new LinkedHashSet<>();
+        for (FlightDto patch : patches) {
+            if (patch.getId() != null) {
+                ids.add(patch.getId());
+            } else if (patch.getFlightNumber() != null) {
+                numbers.add(patch.getFlightNumber());
+            }
+        }
+        Map<Integer, FlightRow> byId = new HashMap<>();
+        if (!ids.isEmpty()) {
+            flightDao.findRowsByIds(ids).forEach(row -> byId.put(row.id(), row));
+        }
+        if (!numbers.isEmpty()) {
+            flightDao.findRowsByFlightNumbers(numbers).forEach(row -> byId.put(row.id(), row));
+        }
+        return byId;
+    }
+
+    /** События публикуются в транзакции: индексы, кэш и уведомления обработают их после коммита */
+    private void publishChanges(Map<Integer, Set<String>> appliedFields) {
+        List<FlightsBatchChangedEvent.Change> notifiable = new ArrayList<>();
+        for (Flight flight : flightDao.findAllByIds(appliedFields.keySet())) {
+            eventPublisher.publishEvent(FlightChangedEvent.updated(flight));
+
+            Set<String> fields = appliedFields.get(flight.getId());
+            if (flight.getSubscriptionCount() > 0 && fields.stream().anyMatch(NOTIFIABLE_FIELDS::contains)) {
+                notifiable.add(new FlightsBatchChangedEvent.Change(flight, fields));
+            }
+        }
+        if (!notifiable.isEmpty()) {
+            eventPublisher.publishEvent(new FlightsBatchChangedEvent(notifiable));
+        }
+    }
+
+    private String validate(FlightDto patch) {
+        if (patch.getStatus() != null) {
+            try {
+                Flight.FlightStatus.valueOf(patch.getStatus());
+            } catch (IllegalArgumentException e) {
+                return "Неизвестный статус рейса: " + patch.getStatus();
+            }
+        }
+        if (patch.getDelayMinutes() != null && patch.getDelayMinutes() < 0) {
+            return "Задержка не может быть отрицательной";
+        }
+        if (patch.getTerminal() != null && patch.getTerminal().length() > 5) {
+            return "Терминал длиннее 5 символов";
+        }
+        if (patch.getGate() != null && patch.getGate().length() > 10) {
+            return "Гейт длиннее 10 символов";
+        }
+        return null;
+    }
+
+    private static void error(FlightBatchPatchResultDto result, int itemNumber, String flightNumber, String message) {
+        result.setFailed(result.getFailed() + 1);
+        result.getErrors().add(new FlightRowErrorDto(itemNumber, flightNumber, message));
+    }
+
+    /** Накопленное состояние одного рейса: исходная строка + применённые поверх неё патчи */
+    private static final class PendingChange {
+
+        private final FlightRow current;
+        private final int itemNumber;
+        private final Set<String> changedFields = new LinkedHashSet<>();
+        // Исходные значения в том же виде, в каком они будут записаны (null → SCHEDULED / 0)
+        private final Flight.FlightStatus originalStatus;
+        private final int originalDelayMinutes;
+
+        private Flight.FlightStatus status;
+        private Integer delayMinutes;
+        private String terminal;
+        private String gate;
+        private LocalDateTime scheduledDeparture;
+        private LocalDateTime estimatedDeparture;
+        private LocalDateTime estimatedArrival;
+
+        PendingChange(FlightRow current, int itemNumber) {
+            this.current = current;
+            this.itemNumber = itemNumber;
+            this.originalStatus = current.status() != null ? current.status() : Flight.FlightStatus.SCHEDULED;
+            this.originalDelayMinutes = current.delayMinutes() != null ? current.delayMinutes() : 0;
+            this.status = originalStatus;
+            this.delayMinutes = originalDelayMinutes;
+            this.terminal = current.terminal();
+            this.gate = current.gate();
+            this.scheduledDeparture = current.scheduledDeparture();
+            this.estimatedDeparture = current.estimatedDeparture();
+            this.estimatedArrival = current.estimatedArrival();
+        }
+
+        void apply(FlightDto patch) {
+            if (patch.getStatus() != null) {
+                status = Flight.FlightStatus.valueOf(patch.getStatus());
+                track("status", originalStatus, status);
+            }
+            if (patch.getDelayMinutes() != null) {
+                delayMinutes = patch.getDelayMinutes();
+                track("delayMinutes", originalDelayMinutes, delayMinutes);
+            }
+            if (patch.getTerminal() != null) {
+                terminal = patch.getTerminal();
+                track("terminal", current.terminal(), terminal);
+            }
+            if (patch.getGate() != null) {
+                gate = patch.getGate();
+                track("gate", current.gate(), gate);
+            }
+            if (patch.getScheduledDeparture() != null) {
+                scheduledDeparture = patch.getScheduledDeparture();
+                track("scheduledDeparture", current.scheduledDeparture(), scheduledDeparture);
+            }
+            if (patch.getEstimatedDeparture() != null) {
+                estimatedDeparture = patch.getEstimatedDeparture();
+                track("estimatedDeparture", current.estimatedDeparture(), estimatedDeparture);
+            }
+            if (patch.getEstimatedArrival() != null) {
+                estimatedArrival = patch.getEstimatedArrival();
+                track("estimatedArrival", current.estimatedArrival(), estimatedArrival);
+            }
+        }
+
+        // Сравнение всегда с исходным значением: вернули как было — поле не считается изменённым
+        private void track(String field, Object original, Object value) {
+            if (Objects.equals(original, value)) {
+                changedFields.remove(field);
+            } else {
+                changedFields.add(field);
+            }
+        }
+
+        FlightPatch toPatch() {
+            return new FlightPatch(current.id(), current.lastUpdated(), status, delayMinutes,
+                    terminal, gate, scheduledDeparture, estimatedDeparture, estimatedArrival);
+        }
+    }
+}
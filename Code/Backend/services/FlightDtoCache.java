@@ -0,0 +1,217 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read-through кэш собранных {@link FlightDto} по id и номеру рейса.
+ * <p>
+ * LRU с ограничением по размеру и TTL. Инвалидация — по {@link FlightChangedEvent}
+ * после коммита (update/patch/delete, пересчёт задержек, изменение подписок).
+ * Загрузка, начатая до инвалидации того же рейса, в кэш не попадает — иначе можно закэшировать
+ * состояние, прочитанное до коммита. Номер инвалидации хранится по id (ограниченный LRU),
+ * поэтому частые изменения одних рейсов не мешают кэшировать другие.
+ * Наружу всегда отдаются копии: вызывающий код может персонализировать DTO (subscribed).
+ */
+@Component
+public class FlightDtoCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final Map<Integer, Entry> byId;
+    private final Map<String, Integer> idByNumber = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    /** id → номер последней инвалидации */
+    private final Map<Integer, Long> invalidatedAt;
+    /** Инвалидации не новее этого номера забыты (вытеснены или clear) — считаем, что затронут любой id */
+    private long forgottenUpTo;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public FlightDtoCache(@Value("${flights.cache.max-size:10000}") int maxSize,
+                          @Value("${flights.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(1, ttlSeconds));
+        this.byId = new LinkedHashMap<>(16, 0.75f, true);
+        this.invalidatedAt = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                forgottenUpTo = Math.max(forgottenUpTo, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public Optional<FlightDto> getById(Integer id, Supplier<Optional<FlightDto>> loader) {
+        FlightDto cached = lookup(id);
+        if (cached != null) {
+            return Optional.of(copy(cached));
+        }
+        return load(loader);
+    }
+
+    public Optional<FlightDto> getByNumber(String flightNumber, Supplier<Optional<FlightDto>> loader) {
+        Integer id;
+        synchronized (this) {
+            id = idByNumber.get(flightNumber);
+        }
+        FlightDto cached = id != null ? lookup(id) : null;
+        if (cached != null && flightNumber.equals(cached.getFlightNumber())) {
+            return Optional.of(copy(cached));
+        }
+        if (id == null) {
+            misses.increment();
+        }
+        return load(loader);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        invalidate(event.getFlightId());
+    }
+
+    public synchronized void invalidate(Integer id) {
+        invalidatedAt.remove(id);
+        invalidatedAt.put(id, sequence.incrementAndGet());
+        Entry removed = byId.remove(id);
+        if (removed != null) {
+            idByNumber.remove(removed.dto.getFlightNumber(), id);
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void clear() {
+        forgottenUpTo = sequence.incrementAndGet();
+        invalidatedAt.clear();
+        invalidations.add(byId.size());
+        byId.clear();
+        idByNumber.clear();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", byId.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0.0);
+        stats.put("sizeEvictions", sizeEvictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private synchronized FlightDto lookup(Integer id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            byId.remove(id);
+            idByNumber.remove(entry.dto.getFlightNumber(), id);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.dto;
+    }
+
+    private Optional<FlightDto> load(Supplier<Optional<FlightDto>> loader) {
+        long startSequence = sequence.get();
+        Optional<FlightDto> loaded = loader.get();
+        loaded.ifPresent(dto -> put(dto, startSequence));
+        return loaded.map(FlightDtoCache::copy);
+    }
+
+    private synchronized void put(FlightDto dto, long startSequence) {
+        // 🔒 Пока грузили, этот рейс инвалидировали — значение могло устареть.
+        // Загрузка по номеру проверяется так же: id известен из загруженного DTO
+        if (dto.getId() == null || invalidatedSince(dto.getId(), startSequence)) {
+            return;
+        }
+        Entry previous = byId.put(dto.getId(), new Entry(dto, System.nanoTime() + ttlNanos));
+        if (previous != null && !Objects.equals(previous.dto.getFlightNumber(), dto.getFlightNumber())) {
+            idByNumber.remove(previous.dto.getFlightNumber(), dto.getId());
+        }
+        if (dto.getFlightNumber() != null) {
+            idByNumber.put(dto.getFlightNumber(), dto.getId());
+        }
+        evictOverflow();
+    }
+
+    private boolean invalidatedSince(Integer id, long startSequence) {
+        if (forgottenUpTo > startSequence) {
+            return true;
+        }
+        Long last = invalidatedAt.get(id);
+        return last != null && last > startSequence;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = byId.values().iterator();
+        while (byId.size() > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            idByNumber.remove(entry.dto.getFlightNumber(), entry.dto.getId());
+            sizeEvictions.increment();
+        }
+    }
+
+    /** Поверхностная копия: вложенные AirportDto общие и не изменяются */
+    private static FlightDto copy(FlightDto source) {
+        FlightDto dto = new FlightDto();
+        dto.setId(source.getId());
+        dto.setFlightNumber(source.getFlightNumber());
+        dto.setAirline(source.getAirline());
+        dto.setDepartureAirport(source.getDepartureAirport());
+        dto.setArrivalAirport(source.getArrivalAirport());
+        dto.setScheduledDeparture(source.getScheduledDeparture());
+        dto.setScheduledArrival(source.getScheduledArrival());
+        dto.setEstimatedDeparture(source.getEstimatedDeparture());
+        dto.setEstimatedArrival(source.getEstimatedArrival());
+        dto.setActualDeparture(source.getActualDeparture());
+        dto.setActualArrival(source.getActualArrival());
+        dto.setDelayMinutes(source.getDelayMinutes());
+        dto.setTerminal(source.getTerminal());
+        dto.setGate(source.getGate());
+        dto.setStatus(source.getStatus());
+        dto.setLastUpdated(source.getLastUpdated());
+        dto.setSubscriptionCount(source.getSubscriptionCount());
+        return dto;
+    }
+
+    private record Entry(FlightDto dto, long expiresAtNanos) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+}
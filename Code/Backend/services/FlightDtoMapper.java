@@ -0,0 +1,78 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.entity.Airport;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.repositories.FlightRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сборка {@link FlightDto} из сущности или плоской строки.
+ * Аэропорты подставляются общими экземплярами из {@link AirportCatalog}.
+ */
+@Component
+@RequiredArgsConstructor
+public class FlightDtoMapper {
+
+    private final AirportCatalog airportCatalog;
+
+    public FlightDto toDto(Flight flight) {
+        FlightDto flightDto = new FlightDto();
+        flightDto.setId(flight.getId());
+        flightDto.setFlightNumber(flight.getFlightNumber());
+        flightDto.setAirline(flight.getAirline());
+
+        // ✈️ Аэропорты из справочника; id у ленивой ссылки читается без загрузки
+        flightDto.setDepartureAirport(airport(flight.getDepartureAirport()));
+        flightDto.setArrivalAirport(airport(flight.getArrivalAirport()));
+
+        flightDto.setScheduledDeparture(flight.getScheduledDeparture());
+        flightDto.setScheduledArrival(flight.getScheduledArrival());
+        flightDto.setEstimatedDeparture(flight.getEstimatedDeparture());
+        flightDto.setEstimatedArrival(flight.getEstimatedArrival());
+        flightDto.setActualDeparture(flight.getActualDeparture());
+        flightDto.setActualArrival(flight.getActualArrival());
+        flightDto.setStatus(flight.getStatus() != null ? flight.getStatus().toString() : null);
+        flightDto.setDelayMinutes(flight.getDelayMinutes());
+        flightDto.setTerminal(flight.getTerminal());
+        flightDto.setGate(flight.getGate());
+        flightDto.setLastUpdated(flight.getLastUpdated());
+
+        // ✅ Денормализованный счётчик активных подписок — без загрузки коллекции
+        flightDto.setSubscriptionCount(flight.getSubscriptionCount());
+
+        return flightDto;
+    }
+
+    public FlightDto toDto(FlightRow row) {
+        FlightDto flightDto = new FlightDto();
+        flightDto.setId(row.id());
+        flightDto.setFlightNumber(row.flightNumber());
+        flightDto.setAirline(row.airline());
+        flightDto.setDepartureAirport(airport(row.departureIata()));
+        flightDto.setArrivalAirport(airport(row.arrivalIata()));
+        flightDto.setScheduledDeparture(row.scheduledDeparture());
+        flightDto.setScheduledArrival(row.scheduledArrival());
+        flightDto.setEstimatedDeparture(row.estimatedDeparture());
+        flightDto.setEstimatedArrival(row.estimatedArrival());
+        flightDto.setActualDeparture(row.actualDeparture());
+        flightDto.setActualArrival(row.actualArrival());
+        flightDto.setStatus(row.status() != null ? row.status().toString() : null);
+        flightDto.setDelayMinutes(row.delayMinutes());
+        flightDto.setTerminal(row.terminal());
+        flightDto.setGate(row.gate());
+        flightDto.setLastUpdated(row.lastUpdated());
+        flightDto.setSubscriptionCount(row.activeSubscriptionCount() != null ? row.activeSubscriptionCount() : 0);
+        return flightDto;
+    }
+
+    private AirportDto airport(Airport airport) {
+        return airport != null ? airport(airport.getIataCode()) : null;
+    }
+
+    private AirportDto airport(String iataCode) {
+        return airportCatalog.resolve(iataCode);
+    }
+}
@@ -0,0 +1,455 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.dto.FlightImportResultDto;
+import com.example.lowflightzone.dto.FlightRowErrorDto;
+import com.example.lowflightzone.entity.Airport;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.events.FlightsBatchChangedEvent;
+import com.example.lowflightzone.exceptions.ValidationException;
+import com.example.lowflightzone.repositories.FlightKeyRow;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт расписания из CSV или JSON-массива.
+ * <p>
+ * Вход читается потоково, каждая строка валидируется отдельно (ошибки копятся в ответе,
+ * импорт не прерывается), аэропорты проверяются по справочнику в памяти.
+ * Валидные строки собираются в пачки по {@value #CHUNK_SIZE}: одна транзакция на пачку,
+ * upsert по flight_number через JDBC batch INSERT/UPDATE.
+ * После записи пачка перечитывается и публикуются {@link FlightChangedEvent},
+ * чтобы индексы и кэши обновились так же, как при одиночных изменениях.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlightImportService {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final Set<String> REQUIRED_CSV_COLUMNS = Set.of(
+            "flightnumber", "airline", "departureairport", "arrivalairport", "scheduleddeparture");
+
+    private final FlightDao flightDao;
+    private final AirportCatalog airportCatalog;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * CSV с заголовком. Колонки: flightNumber, airline, departureAirport, arrivalAirport,
+     * scheduledDeparture, scheduledArrival, estimatedDeparture, estimatedArrival, status,
+     * delayMinutes, terminal, gate (регистр и "_" в названиях не важны). Разделитель — "," или ";".
+     */
+    public FlightImportResultDto importCsv(InputStream in) throws IOException {
+        ImportSession session = new ImportSession();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        String header = reader.readLine();
+        if (header == null || header.isBlank()) {
+            throw new ValidationException("Пустой CSV: нет строки заголовка");
+        }
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        char delimiter = header.indexOf(',') < 0 && header.indexOf(';') >= 0 ? ';' : ',';
+        List<String> columns = parseCsvLine(header, delimiter).stream()
+                .map(FlightImportService::normalizeColumn)
+                .toList();
+        Set<String> missing = new HashSet<>(REQUIRED_CSV_COLUMNS);
+        missing.removeAll(columns);
+        if (!missing.isEmpty()) {
+            throw new ValidationException("В CSV нет обязательных колонок: " + missing);
+        }
+
+        int rowNumber = 1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            rowNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> values = parseCsvLine(line, delimiter);
+            FlightDto dto;
+            try {
+                dto = toFlightDto(columns, values);
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                session.total++;
+                session.error(rowNumber, valueOf(columns, values, "flightnumber"),
+                        "Некорректное значение: " + e.getMessage());
+                continue;
+            }
+            session.accept(rowNumber, dto);
+        }
+        return session.finish();
+    }
+
+    /** JSON-массив объектов в формате FlightDto; аэропорты — объектом {iataCode} или строкой с кодом */
+    public FlightImportResultDto importJson(InputStream in) throws IOException {
+        ImportSession session = new ImportSession();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ValidationException("Ожидается JSON-массив рейсов");
+            }
+            int index = 0;
+            JsonToken token;
+            try {
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                    index++;
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        session.total++;
+                        session.error(index, null, "Элемент массива не является объектом");
+                        continue;
+                    }
+                    JsonNode node = parser.readValueAsTree();
+                    FlightDto dto;
+                    try {
+                        dto = objectMapper.treeToValue(normalizeAirports(node), FlightDto.class);
+                    } catch (JsonProcessingException e) {
+                        session.total++;
+                        session.error(index, node.path("flightNumber").asText(null),
+                                "Некорректный объект: " + e.getOriginalMessage());
+                        continue;
+                    }
+                    session.accept(index, dto);
+                }
+            } catch (JsonProcessingException e) {
+                // 💥 Поток оборван или испорчен: уже принятое сохраняем, остальное — одной ошибкой
+                session.error(index + 1, null, "JSON повреждён, импорт остановлен: " + e.getOriginalMessage());
+            }
+        }
+        return session.finish();
+    }
+
+    private JsonNode normalizeAirports(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            for (String field : List.of("departureAirport", "arrivalAirport")) {
+                JsonNode value = object.get(field);
+                if (value != null && value.isTextual()) {
+                    object.putObject(field).put("iataCode", value.asText());
+                }
+            }
+        }
+        return node;
+    }
+
+    // ---------- сессия импорта ----------
+
+    private record ImportRow(int rowNumber, Flight flight) {
+    }
+
+    private final class ImportSession {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final FlightImportResultDto result = new FlightImportResultDto();
+        private final Map<String, ImportRow> chunk = new LinkedHashMap<>();
+        private int total;
+
+        void accept(int rowNumber, FlightDto dto) {
+            total++;
+            String error = validate(dto);
+            if (error != null) {
+                error(rowNumber, dto.getFlightNumber(), error);
+                return;
+            }
+            Flight flight = toFlight(dto);
+            // 🔁 Повтор номера в пачке: сначала пишем накопленное, чтобы строки применялись по порядку
+            if (chunk.containsKey(flight.getFlightNumber())) {
+                flush();
+            }
+            chunk.put(flight.getFlightNumber(), new ImportRow(rowNumber, flight));
+            if (chunk.size() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void error(int rowNumber, String flightNumber, String message) {
+            result.setFailed(result.getFailed() + 1);
+            if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+                result.getErrors().add(new FlightRowErrorDto(rowNumber, flightNumber, message));
+            } else {
+                result.setErrorsTruncated(true);
+            }
+        }
+
+        FlightImportResultDto finish() {
+            flush();
+            result.setTotal(total);
+            result.setDurationMs(System.currentTimeMillis() - startedAt);
+            log.info("📥 Импорт рейсов: всего {}, добавлено {}, обновлено {}, ошибок {} за {} мс",
+                    total, result.getInserted(), result.getUpdated(), result.getFailed(), result.getDurationMs());
+            return result;
+        }
+
+        private String validate(FlightDto dto) {
+            if (isBlank(dto.getFlightNumber())) {
+                return "Номер рейса не может быть пустым";
+            }
+            if (dto.getFlightNumber().trim().length() > 10) {
+                return "Номер рейса длиннее 10 символов";
+            }
+            if (isBlank(dto.getAirline())) {
+                return "Авиакомпания не может быть пустой";
+            }
+            if (dto.getAirline().trim().length() > 50) {
+                return "Название авиакомпании длиннее 50 символов";
+            }
+            String departure = iataOf(dto.getDepartureAirport());
+            String arrival = iataOf(dto.getArrivalAirport());
+            if (departure == null) {
+                return "Аэропорт вылета не может быть пустым";
+            }
+            if (arrival == null) {
+                return "Аэропорт прибытия не может быть пустым";
+            }
+            if (departure.equals(arrival)) {
+                return "Аэропорты вылета и прибытия совпадают";
+            }
+            if (!airportCatalog.contains(departure)) {
+                return "Аэропорт вылета не найден: " + departure;
+            }
+            if (!airportCatalog.contains(arrival)) {
+                return "Аэропорт прибытия не найден: " + arrival;
+            }
+            if (dto.getScheduledDeparture() == null) {
+                return "Время вылета не может быть пустым";
+            }
+            if (dto.getScheduledArrival() != null && !dto.getScheduledArrival().isAfter(dto.getScheduledDeparture())) {
+                return "Время прибытия должно быть позже времени вылета";
+            }
+            if (dto.getStatus() != null) {
+                try {
+                    Flight.FlightStatus.valueOf(dto.getStatus());
+                } catch (IllegalArgumentException e) {
+                    return "Неизвестный статус рейса: " + dto.getStatus();
+                }
+            }
+            if (dto.getDelayMinutes() != null && dto.getDelayMinutes() < 0) {
+                return "Задержка не может быть отрицательной";
+            }
+            if (dto.getTerminal() != null && dto.getTerminal().length() > 5) {
+                return "Терминал длиннее 5 символов";
+            }
+            if (dto.getGate() != null && dto.getGate().length() > 10) {
+                return "Гейт длиннее 10 символов";
+            }
+            return null;
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<ImportRow> rows = new ArrayList<>(chunk.values());
+            chunk.clear();
+            Set<String> numbers = rows.stream()
+                    .map(r -> r.flight().getFlightNumber())
+                    .collect(Collectors.toSet());
+
+            try {
+                ChunkOutcome outcome = transactionTemplate.execute(status -> writeChunk(rows, numbers));
+                result.setInserted(result.getInserted() + outcome.inserted());
+                result.setUpdated(result.getUpdated() + outcome.updated());
+            } catch (DataAccessException e) {
+                String cause = e.getMostSpecificCause().getMessage();
+                log.warn("⚠️ Пачка импорта из {} строк не записана: {}", rows.size(), cause);
+                rows.forEach(r -> error(r.rowNumber(), r.flight().getFlightNumber(), "Ошибка записи пачки: " + cause));
+            }
+        }
+    }
+
+    private record ChunkOutcome(int inserted, int updated) {
+    }
+
+    private ChunkOutcome writeChunk(List<ImportRow> rows, Set<String> numbers) {
+        Map<String, FlightKeyRow> existing = flightDao.findKeysByFlightNumbers(numbers).stream()
+                .collect(Collectors.toMap(FlightKeyRow::flightNumber, Function.identity()));
+
+        List<Flight> inserts = new ArrayList<>();
+        List<Flight> updates = new ArrayList<>();
+        for (ImportRow row : rows) {
+            FlightKeyRow key = existing.get(row.flight().getFlightNumber());
+            if (key == null) {
+                inserts.add(row.flight());
+            } else {
+                row.flight().setId(key.id());
+                updates.add(row.flight());
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        flightDao.batchInsert(inserts, now);
+        flightDao.batchUpdate(updates, now);
+
+        // 📣 События публикуются внутри транзакции — слушатели отработают после коммита,
+        // уведомления подписчиков попадут в outbox этой же транзакции
+        List<FlightsBatchChangedEvent.Change> notifiable = new ArrayList<>();
+        for (Flight saved : flightDao.findAllByFlightNumbers(numbers)) {
+            FlightKeyRow before = existing.get(saved.getFlightNumber());
+            if (before == null) {
+                eventPublisher.publishEvent(FlightChangedEvent.created(saved));
+                continue;
+            }
+            eventPublisher.publishEvent(FlightChangedEvent.updated(saved));
+            boolean hasSubscribers = before.activeSubscriptionCount() != null && before.activeSubscriptionCount() > 0;
+            Set<String> changedFields = new LinkedHashSet<>();
+            if (!Objects.equals(before.status(), saved.getStatus())) {
+                changedFields.add("status");
+            }
+            if (!Objects.equals(before.scheduledDeparture(), saved.getScheduledDeparture())) {
+                changedFields.add("scheduledDeparture");
+            }
+            if (hasSubscribers && !changedFields.isEmpty()) {
+                notifiable.add(new FlightsBatchChangedEvent.Change(saved, changedFields));
+            }
+        }
+        if (!notifiable.isEmpty()) {
+            eventPublisher.publishEvent(new FlightsBatchChangedEvent(notifiable));
+        }
+        return new ChunkOutcome(inserts.size(), updates.size());
+    }
+
+    // ---------- преобразование строк ----------
+
+    private static Flight toFlight(FlightDto dto) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(dto.getFlightNumber().trim());
+        flight.setAirline(dto.getAirline().trim());
+        flight.setDepartureAirport(airportStub(iataOf(dto.getDepartureAirport())));
+        flight.setArrivalAirport(airportStub(iataOf(dto.getArrivalAirport())));
+        flight.setScheduledDeparture(dto.getScheduledDeparture());
+        flight.setScheduledArrival(dto.getScheduledArrival());
+        flight.setEstimatedDeparture(dto.getEstimatedDeparture());
+        flight.setEstimatedArrival(dto.getEstimatedArrival());
+        flight.setStatus(dto.getStatus() != null ? Flight.FlightStatus.valueOf(dto.getStatus()) : null);
+        flight.setDelayMinutes(dto.getDelayMinutes());
+        flight.setTerminal(dto.getTerminal());
+        flight.setGate(dto.getGate());
+        return flight;
+    }
+
+    /** Для JDBC-записи от аэропорта нужен только код — сущность не загружаем */
+    private static Airport airportStub(String iataCode) {
+        Airport airport = new Airport();
+        airport.setIataCode(iataCode);
+        return airport;
+    }
+
+    private static FlightDto toFlightDto(List<String> columns, List<String> values) {
+        FlightDto dto = new FlightDto();
+        for (int i = 0; i < columns.size() && i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (columns.get(i)) {
+                case "flightnumber" -> dto.setFlightNumber(value);
+                case "airline" -> dto.setAirline(value);
+                case "departureairport" -> dto.setDepartureAirport(airportDto(value));
+                case "arrivalairport" -> dto.setArrivalAirport(airportDto(value));
+                case "scheduleddeparture" -> dto.setScheduledDeparture(LocalDateTime.parse(value));
+                case "scheduledarrival" -> dto.setScheduledArrival(LocalDateTime.parse(value));
+                case "estimateddeparture" -> dto.setEstimatedDeparture(LocalDateTime.parse(value));
+                case "estimatedarrival" -> dto.setEstimatedArrival(LocalDateTime.parse(value));
+                case "status" -> dto.setStatus(value.toUpperCase(Locale.ROOT));
+                case "delayminutes" -> dto.setDelayMinutes(Integer.valueOf(value));
+                case "terminal" -> dto.setTerminal(value);
+                case "gate" -> dto.setGate(value);
+                default -> {
+                    // неизвестные колонки игнорируются
+                }
+            }
+        }
+        return dto;
+    }
+
+    private static AirportDto airportDto(String iataCode) {
+        AirportDto airport = new AirportDto();
+        airport.setIataCode(iataCode.toUpperCase(Locale.ROOT));
+        return airport;
+    }
+
+    /** Разбор строки CSV: поля в кавычках, "" внутри кавычек — экранированная кавычка */
+    static List<String> parseCsvLine(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static String normalizeColumn(String column) {
+        return column.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static String valueOf(List<String> columns, List<String> values, String column) {
+        int index = columns.indexOf(column);
+        return index >= 0 && index < values.size() ? values.get(index).trim() : null;
+    }
+
+    private static String iataOf(AirportDto airport) {
+        if (airport == null || isBlank(airport.getIataCode())) {
+            return null;
+        }
+        return airport.getIataCode().trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.repositories.FlightRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Построение индексов рейсов в памяти при старте — один проход по таблице на оба индекса.
+ * <p>
+ * Плоские строки ({@link FlightRow}) читаются keyset-страницами по id размером flights.index.page-size:
+ * ни сущностей в persistence context, ни всей таблицы в памяти разом.
+ * События изменений рейсов, пришедшие во время прохода, применяются к индексам сразу,
+ * а страницы такие рейсы пропускают (см. {@link FlightSearchIndex}, {@link FlightScheduleIndex}).
+ */
+@Slf4j
+@Component
+public class FlightIndexLoader {
+
+    private final FlightDao flightDao;
+    private final FlightSearchIndex searchIndex;
+    private final FlightScheduleIndex scheduleIndex;
+    private final StartupPhases startupPhases;
+    private final int pageSize;
+
+    public FlightIndexLoader(FlightDao flightDao, FlightSearchIndex searchIndex, FlightScheduleIndex scheduleIndex,
+                             StartupPhases startupPhases,
+                             @Value("${flights.index.page-size:5000}") int pageSize) {
+        this.flightDao = flightDao;
+        this.searchIndex = searchIndex;
+        this.scheduleIndex = scheduleIndex;
+        this.startupPhases = startupPhases;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        startupPhases.time("flightIndexes", () -> {
+            searchIndex.beginRebuild();
+            scheduleIndex.beginRebuild();
+            long loaded = 0;
+            try {
+                int afterId = 0;
+                List<FlightRow> page;
+                do {
+                    page = flightDao.findRowsAfterId(afterId, pageSize);
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    searchIndex.load(page);
+                    scheduleIndex.load(page);
+                    loaded += page.size();
+                    afterId = page.getLast().id();
+                } while (page.size() == pageSize);
+            } finally {
+                searchIndex.finishRebuild();
+                scheduleIndex.finishRebuild();
+            }
+            log.info("📚 Индексы рейсов построены за один проход: {} строк", loaded);
+        });
+    }
+}
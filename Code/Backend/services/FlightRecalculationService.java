@@ -0,0 +1,318 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dao.FlightRecalculation;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.repositories.FlightEstimateRow;
+import com.example.lowflightzone.repositories.FlightIdScope;
+import com.example.lowflightzone.repositories.FlightStateRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Пересчёт статусов и расчётных/фактических времён рейсов.
+ * <p>
+ * Полный пересчёт делит таблицу на диапазоны id и обрабатывает их параллельно
+ * в пуле recalculationExecutor: каждый диапазон — своя короткая транзакция,
+ * чтение проекцией без аэропортов и подписок, запись одним JDBC batch.
+ * Сущности загружаются только для реально изменившихся рейсов — ради событий.
+ * При нескольких узлах блоки id распределены по шардам {@link SchedulerLeases}:
+ * каждый узел пересчитывает только блоки своих шардов.
+ * <p>
+ * Режим flights.recalc.mode: java (по умолчанию) — правила {@link FlightStatusCalculator} в Java;
+ * sql — те же правила набором bulk UPDATE в БД; в Java читаются только id изменённых
+ * рейсов и расчётные времена для очереди переходов. С flights.recalc.verify-sql=true каждый
+ * SQL-проход сверяется с {@link FlightStatusCalculator}: пересчитанные строки должны быть его
+ * неподвижной точкой, расхождения пишутся в лог и в метрики прогона.
+ * <p>
+ * Полные прогоны не перекрываются: пока идёт один, следующий пропускается и учитывается
+ * в метриках. Метрики и история прогонов — {@link RecalculationMetrics}.
+ */
+@Slf4j
+@Service
+public class FlightRecalculationService {
+
+    private final FlightDao flightDao;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor recalculationExecutor;
+    private final int chunkSize;
+    private final boolean sqlMode;
+    private final boolean verifySql;
+    private final RecalculationMetrics metrics;
+    private final SchedulerLeases schedulerLeases;
+    private final Clock clock;
+
+    private final AtomicBoolean fullRunInProgress = new AtomicBoolean();
+    private volatile RecalculationRun lastFullRun;
+
+    public FlightRecalculationService(FlightDao flightDao, ApplicationEventPublisher eventPublisher,
+                                      TransactionTemplate transactionTemplate,
+                                      @Qualifier("recalculationExecutor") Executor recalculationExecutor,
+                                      @Value("${flights.recalc.chunk-size:2000}") int chunkSize,
+                                      @Value("${flights.recalc.mode:java}") String mode,
+                                      @Value("${flights.recalc.verify-sql:false}") boolean verifySql,
+                                      RecalculationMetrics metrics, SchedulerLeases schedulerLeases,
+                                      Clock clock) {
+        this.flightDao = flightDao;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.recalculationExecutor = recalculationExecutor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.sqlMode = "sql".equalsIgnoreCase(mode);
+        this.verifySql = verifySql;
+        this.metrics = metrics;
+        this.schedulerLeases = schedulerLeases;
+        this.clock = clock;
+    }
+
+    /**
+     * Полный пересчёт всех рейсов. Упавший диапазон логируется и не прерывает остальные —
+     * его рейсы подберёт следующий проход.
+     *
+     * Обрабатываются только диапазоны шардов, аренда которых у этого узла.
+     *
+     * @param trigger источник запуска для метрик и истории (startup, sweep)
+     * @return момент следующего перехода для каждого рейса, у которого он есть;
+     *         пустой, если прогон пропущен из-за ещё идущего предыдущего
+     */
+    public Map<Integer, LocalDateTime> recalculateAll(String trigger) {
+        return recalculateShards(trigger, null);
+    }
+
+    /** Полный пересчёт только указанных шардов (null — всех своих), например после их захвата */
+    public Map<Integer, LocalDateTime> recalculateShards(String trigger, Set<Integer> shards) {
+        if (!fullRunInProgress.compareAndSet(false, true)) {
+            log.warn("⏭ Полный пересчёт ({}) пропущен: предыдущий ещё идёт", trigger);
+            metrics.record(RecalculationRun.skipped(trigger, modeName()), true);
+            return Map.of();
+        }
+        try {
+            return runFull(trigger, shards);
+        } finally {
+            fullRunInProgress.set(false);
+        }
+    }
+
+    /**
+     * Рейс принадлежит шарду своего блока id: блоки по chunk-size выровнены по нулю,
+     * поэтому разбиение одинаково на всех узлах при одинаковых настройках.
+     */
+    public boolean owns(Integer flightId) {
+        return schedulerLeases.ownsShard(shardOf(flightId / chunkSize));
+    }
+
+    private int shardOf(long block) {
+        return (int) (block % schedulerLeases.shardCount());
+    }
+
+    private Map<Integer, LocalDateTime> runFull(String trigger, Set<Integer> shards) {
+        Integer minId = flightDao.findMinId();
+        Integer maxId = flightDao.findMaxId();
+        if (minId == null || maxId == null) {
+            return Map.of();
+        }
+
+        List<Long> blocks = new ArrayList<>();
+        for (long block = minId / chunkSize; block <= maxId / chunkSize; block++) {
+            int shard = shardOf(block);
+            if ((shards == null || shards.contains(shard)) && schedulerLeases.ownsShard(shard)) {
+                blocks.add(block);
+            }
+        }
+        if (blocks.isEmpty()) {
+            return Map.of();
+        }
+
+        final LocalDateTime now = LocalDateTime.now(clock);
+        RecalculationRun run = new RecalculationRun(trigger, modeName(), blocks.size());
+        lastFullRun = run;
+
+        Map<Integer, LocalDateTime> nextTransitions = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>(blocks.size());
+        for (long block : blocks) {
+            int fromId = (int) Math.max(minId, block * chunkSize);
+            int toId = (int) Math.min(maxId, block * chunkSize + chunkSize - 1);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    nextTransitions.putAll(recalculate(FlightIdScope.range(fromId, toId), now, run));
+                    run.chunkCompleted();
+                } catch (RuntimeException e) {
+                    run.chunkFailed();
+                    log.error("❌ Ошибка пересчёта рейсов id {}..{}: {}", fromId, toId, e.getMessage());
+                }
+            }, recalculationExecutor));
+        }
+        CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+
+        run.finish();
+        metrics.record(run, true);
+        log.info("✅ Пересчёт рейсов завершён: {}", run.snapshot());
+        return nextTransitions;
+    }
+
+    /** Пересчёт конкретных рейсов одной транзакцией — для наступивших переходов */
+    public Map<Integer, LocalDateTime> recalculateFlights(Collection<Integer> flightIds) {
+        RecalculationRun run = new RecalculationRun("transitions", modeName(), 1);
+        Map<Integer, LocalDateTime> nextTransitions =
+                recalculate(FlightIdScope.of(flightIds), LocalDateTime.now(clock), run);
+        run.finish();
+        metrics.record(run, false);
+        return nextTransitions;
+    }
+
+    /** Ход текущего или последнего полного пересчёта */
+    public Map<String, Object> progress() {
+        RecalculationRun current = lastFullRun;
+        return current != null ? current.snapshot() : Map.of("status", "NEVER_RUN");
+    }
+
+    /** История последних полных прогонов, включая пропущенные */
+    public List<Map<String, Object>> recentRuns() {
+        return metrics.recentRuns();
+    }
+
+    private String modeName() {
+        return sqlMode ? "sql" : "java";
+    }
+
+    private Map<Integer, LocalDateTime> recalculate(FlightIdScope scope, LocalDateTime now, RecalculationRun run) {
+        return transactionTemplate.execute(status -> sqlMode
+                ? recalculateInSql(scope, now, run)
+                : recalculateInJava(scope, now, run));
+    }
+
+    private Map<Integer, LocalDateTime> recalculateInJava(FlightIdScope scope, LocalDateTime now, RecalculationRun run) {
+        long started = System.nanoTime();
+        List<FlightStateRow> rows = scope.ids() != null
+                ? flightDao.findStatesByIds(scope.ids())
+                : flightDao.findStatesByIdRange(scope.fromId(), scope.toId());
+        long loaded = System.nanoTime();
+        run.addDbNanos(loaded - started);
+        run.addScanned(rows.size());
+
+        Map<Integer, LocalDateTime> nextTransitions = new HashMap<>();
+        List<FlightRecalculation> changes = new ArrayList<>();
+
+        for (FlightStateRow row : rows) {
+            FlightState before = FlightState.of(row);
+            FlightState after = FlightStatusCalculator.evaluate(before, now);
+            if (after != before) {
+                changes.add(new FlightRecalculation(row.id(), row.lastUpdated(), after.status(),
+                        after.estimatedDeparture(), after.estimatedArrival(),
+                        after.actualDeparture(), after.actualArrival()));
+            }
+            LocalDateTime next = FlightStatusCalculator.nextTransition(after, now);
+            if (next != null) {
+                nextTransitions.put(row.id(), next);
+            }
+        }
+
+        run.addComputeNanos(System.nanoTime() - loaded);
+
+        if (!changes.isEmpty()) {
+            long writeStarted = System.nanoTime();
+            writeAndPublish(changes, run);
+            run.addDbNanos(System.nanoTime() - writeStarted);
+        }
+        return nextTransitions;
+    }
+
+    /**
+     * Правила применяются на момент now (один на весь прогон), а last_updated изменённых строк —
+     * время записи: оно не старше правок, закоммиченных до неё, и не двигает версию рейса назад.
+     * Изменённые строки выбираются по случайной метке прогона, а не по времени.
+     */
+    private Map<Integer, LocalDateTime> recalculateInSql(FlightIdScope scope, LocalDateTime now, RecalculationRun run) {
+        long started = System.nanoTime();
+        LocalDateTime mark = LocalDateTime.now(clock);
+        run.addScanned(scope.ids() != null ? scope.ids().size() : flightDao.countInScope(scope));
+        List<Integer> changedIds = flightDao.bulkRecalculate(scope, now, mark);
+        if (!changedIds.isEmpty()) {
+            publishChanged(changedIds, run);
+        }
+        if (verifySql) {
+            verifyAgainstCalculator(scope, now, run);
+        }
+        List<FlightEstimateRow> upcoming = flightDao.findUpcomingEstimates(scope, now);
+        long queried = System.nanoTime();
+        run.addDbNanos(queried - started);
+
+        Map<Integer, LocalDateTime> nextTransitions = new HashMap<>();
+        for (FlightEstimateRow row : upcoming) {
+            LocalDateTime next = FlightStatusCalculator.nextTransition(
+                    row.estimatedDeparture(), row.estimatedArrival(), now);
+            if (next != null) {
+                nextTransitions.put(row.id(), next);
+            }
+        }
+        run.addComputeNanos(System.nanoTime() - queried);
+        return nextTransitions;
+    }
+
+    /**
+     * Сверка SQL-режима с Java-правилами: после bulk UPDATE каждая строка набора должна
+     * остаться неизменной под {@link FlightStatusCalculator#evaluate} на тот же момент.
+     */
+    private void verifyAgainstCalculator(FlightIdScope scope, LocalDateTime now, RecalculationRun run) {
+        List<FlightStateRow> rows = scope.ids() != null
+                ? flightDao.findStatesByIds(scope.ids())
+                : flightDao.findStatesByIdRange(scope.fromId(), scope.toId());
+        for (FlightStateRow row : rows) {
+            FlightState actual = FlightState.of(row);
+            FlightState expected = FlightStatusCalculator.evaluate(actual, now);
+            if (!expected.equals(actual)) {
+                run.addMismatch();
+                log.warn("⚠️ SQL-пересчёт рейса id={} расходится с Java-правилами: {} ≠ {}",
+                        row.id(), actual, expected);
+            }
+        }
+    }
+
+    /**
+     * Рейсы, изменённые параллельно, пропускаются: их собственное событие переставит переход.
+     * last_updated — время записи, а не начала прогона: версия рейса не уходит назад.
+     */
+    private void writeAndPublish(List<FlightRecalculation> changes, RecalculationRun run) {
+        boolean[] applied = flightDao.batchRecalculate(changes, LocalDateTime.now(clock));
+        List<Integer> changedIds = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            if (applied[i]) {
+                changedIds.add(changes.get(i).id());
+            }
+        }
+        if (!changedIds.isEmpty()) {
+            publishChanged(changedIds, run);
+        }
+    }
+
+    private void publishChanged(List<Integer> changedIds, RecalculationRun run) {
+        // События публикуются в транзакции: индексы, кэш и очередь переходов обработают их после коммита
+        for (Flight f : flightDao.findAllByIds(changedIds)) {
+            eventPublisher.publishEvent(FlightChangedEvent.updated(f));
+            run.addChanged(f.getStatus());
+            log.debug("✈️ Пересчитан рейс {} — status={} | delay={} | estDep={} estArr={} | actDep={} actArr={}",
+                    f.getFlightNumber(), f.getStatus(), f.getDelayMinutes(),
+                    f.getEstimatedDeparture(), f.getEstimatedArrival(),
+                    f.getActualDeparture(), f.getActualArrival());
+        }
+    }
+}
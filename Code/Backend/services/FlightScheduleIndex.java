@@ -0,0 +1,153 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.repositories.FlightRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Расписание в памяти: вылеты и прилёты каждого аэропорта, упорядоченные по эффективному времени.
+ * Выборка окна по времени — O(log n + k). Рейсы без времени или аэропортов не хранятся;
+ * отменённые хранятся (нужны табло), маршрутизация отбрасывает их сама.
+ * <p>
+ * При старте заполняется страницами из {@link FlightIndexLoader}. Рейсы, по которым во время
+ * загрузки пришло событие, страницей не перезаписываются: событие не старше прочитанной строки.
+ */
+@Slf4j
+@Component
+public class FlightScheduleIndex {
+
+    private final Map<Integer, ScheduledLeg> legsById = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<TimeKey, ScheduledLeg>> departures = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<TimeKey, ScheduledLeg>> arrivals = new ConcurrentHashMap<>();
+
+    /** id рейсов, изменённых событиями во время перестройки; null — перестройки нет */
+    private Set<Integer> changedDuringRebuild;
+
+    synchronized void beginRebuild() {
+        legsById.clear();
+        departures.clear();
+        arrivals.clear();
+        changedDuringRebuild = new HashSet<>();
+    }
+
+    synchronized void load(List<FlightRow> rows) {
+        for (FlightRow row : rows) {
+            if (!changedDuringRebuild.contains(row.id())) {
+                removeLocked(row.id());
+                putLocked(ScheduledLeg.of(row));
+            }
+        }
+    }
+
+    synchronized void finishRebuild() {
+        changedDuringRebuild = null;
+        log.info("🗺 Расписание в памяти построено: {} рейсов", legsById.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        switch (event.getType()) {
+            case DELETED -> remove(event.getFlightId());
+            case CREATED, UPDATED -> put(event.getFlight());
+            default -> { } // число подписок на расписание не влияет
+        }
+    }
+
+    public synchronized void put(Flight flight) {
+        markChanged(flight.getId());
+        removeLocked(flight.getId());
+        putLocked(ScheduledLeg.of(flight));
+    }
+
+    public synchronized void remove(Integer flightId) {
+        markChanged(flightId);
+        removeLocked(flightId);
+    }
+
+    private void markChanged(Integer flightId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(flightId);
+        }
+    }
+
+    /** Вылеты из аэропорта с эффективным временем вылета в [from, to] по возрастанию */
+    public Collection<ScheduledLeg> departuresBetween(String iata, LocalDateTime from, LocalDateTime to) {
+        return window(departures.get(iata), from, to);
+    }
+
+    /** Прилёты в аэропорт с эффективным временем прилёта в [from, to] по возрастанию */
+    public Collection<ScheduledLeg> arrivalsBetween(String iata, LocalDateTime from, LocalDateTime to) {
+        return window(arrivals.get(iata), from, to);
+    }
+
+    private static Collection<ScheduledLeg> window(NavigableMap<TimeKey, ScheduledLeg> board,
+                                                   LocalDateTime from, LocalDateTime to) {
+        if (board == null || from.isAfter(to)) {
+            return List.of();
+        }
+        return board.subMap(TimeKey.lowest(from), true, TimeKey.highest(to), true).values();
+    }
+
+    private void putLocked(ScheduledLeg leg) {
+        if (!isSchedulable(leg)) {
+            return;
+        }
+        legsById.put(leg.flightId(), leg);
+        departures.computeIfAbsent(leg.departureIata(), k -> new ConcurrentSkipListMap<>())
+                .put(new TimeKey(leg.departure(), leg.flightId()), leg);
+        arrivals.computeIfAbsent(leg.arrivalIata(), k -> new ConcurrentSkipListMap<>())
+                .put(new TimeKey(leg.arrival(), leg.flightId()), leg);
+    }
+
+    private void removeLocked(Integer flightId) {
+        ScheduledLeg old = legsById.remove(flightId);
+        if (old == null) {
+            return;
+        }
+        Map<TimeKey, ScheduledLeg> departureBoard = departures.get(old.departureIata());
+        if (departureBoard != null) {
+            departureBoard.remove(new TimeKey(old.departure(), old.flightId()));
+        }
+        Map<TimeKey, ScheduledLeg> arrivalBoard = arrivals.get(old.arrivalIata());
+        if (arrivalBoard != null) {
+            arrivalBoard.remove(new TimeKey(old.arrival(), old.flightId()));
+        }
+    }
+
+    private static boolean isSchedulable(ScheduledLeg leg) {
+        return leg.flightId() != null
+                && leg.departureIata() != null && leg.arrivalIata() != null
+                && leg.departure() != null && leg.arrival() != null;
+    }
+
+    /** Ключ упорядочивания: время, затем id (рейсы в одну минуту не затирают друг друга) */
+    record TimeKey(LocalDateTime time, int flightId) implements Comparable<TimeKey> {
+
+        static TimeKey lowest(LocalDateTime time) {
+            return new TimeKey(time, Integer.MIN_VALUE);
+        }
+
+        static TimeKey highest(LocalDateTime time) {
+            return new TimeKey(time, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : Integer.compare(flightId, other.flightId);
+        }
+    }
+}
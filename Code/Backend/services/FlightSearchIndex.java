@@ -0,0 +1,465 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.AirportDto;
+import com.example.lowflightzone.entity.Airport;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.repositories.FlightRow;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory триграммный индекс для поиска рейсов.
+ * <p>
+ * Двухуровневый: номер рейса и авиакомпания индексируются по рейсам,
+ * IATA / город / название — по аэропортам (их мало), а рейсы находятся
+ * через списки вылетов и прилётов аэропорта. Запросы короче трёх символов
+ * ищутся по началу слов.
+ * <p>
+ * При старте заполняется страницами плоских строк из {@link FlightIndexLoader}, аэропорты — из
+ * {@link AirportCatalog}. Рейсы, по которым во время загрузки пришло событие, страницей
+ * не перезаписываются: событие не старше прочитанной строки.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FlightSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final char WORD_START = '^';
+
+    // 🎯 Качество совпадения (умножается на вес поля)
+    private static final int EXACT = 100;
+    private static final int PREFIX = 60;
+    private static final int WORD_PREFIX = 40;
+    private static final int CONTAINS = 20;
+
+    private static final int FLIGHT_NUMBER_WEIGHT = 6;
+    private static final int AIRLINE_WEIGHT = 3;
+    private static final int IATA_WEIGHT = 5;
+    private static final int CITY_WEIGHT = 2;
+    private static final int AIRPORT_NAME_WEIGHT = 1;
+
+    private final AirportCatalog airportCatalog;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, IndexedFlight> flights = new HashMap<>();
+    private final Map<String, IntPostings> flightGrams = new HashMap<>();
+    private final Map<String, IndexedAirport> airports = new HashMap<>();
+    private final Map<String, Set<String>> airportGrams = new HashMap<>();
+    private final Map<String, IntPostings> departuresByAirport = new HashMap<>();
+    private final Map<String, IntPostings> arrivalsByAirport = new HashMap<>();
+
+    /** id рейсов, изменённых событиями во время перестройки; null — перестройки нет */
+    private Set<Integer> changedDuringRebuild;
+
+    /** Начало полной перестройки: индекс очищается, аэропорты берутся из справочника */
+    void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            flights.clear();
+            flightGrams.clear();
+            airports.clear();
+            airportGrams.clear();
+            departuresByAirport.clear();
+            arrivalsByAirport.clear();
+            for (AirportDto airport : airportCatalog.all()) {
+                indexAirportLocked(airport.getIataCode(), airport.getCity(), airport.getName());
+            }
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void load(List<FlightRow> rows) {
+        lock.writeLock().lock();
+        try {
+            for (FlightRow row : rows) {
+                if (!changedDuringRebuild.contains(row.id())) {
+                    removeLocked(row.id());
+                    indexFlightLocked(row.id(), row.flightNumber(), row.airline(),
+                            row.departureIata(), row.arrivalIata());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void finishRebuild() {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = null;
+            log.info("🔎 Поисковый индекс построен: {} рейсов, {} аэропортов", flights.size(), airports.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Инкрементальное обновление после коммита изменения рейса */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        if (event.getType() == FlightChangedEvent.ChangeType.DELETED) {
+            remove(event.getFlightId());
+        } else if (event.getFlight() != null) {
+            index(event.getFlight());
+        }
+    }
+
+    public void index(Flight flight) {
+        lock.writeLock().lock();
+        try {
+            markChangedLocked(flight.getId());
+            removeLocked(flight.getId());
+            indexLocked(flight);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Integer flightId) {
+        lock.writeLock().lock();
+        try {
+            markChangedLocked(flightId);
+            removeLocked(flightId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Поиск id рейсов, упорядоченных по качеству совпадения (затем по id).
+     */
+    public List<Integer> search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        Set<String> queryGrams = queryGrams(q);
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = new HashMap<>();
+
+            // ✈️ Совпадения по номеру рейса и авиакомпании
+            IntPostings candidates = intersect(queryGrams, flightGrams);
+            if (candidates != null) {
+                candidates.forEach(id -> {
+                    IndexedFlight f = flights.get(id);
+                    int score = Math.max(
+                            match(f.flightNumber, q) * FLIGHT_NUMBER_WEIGHT,
+                            match(f.airline, q) * AIRLINE_WEIGHT);
+                    if (score > 0) {
+                        scores.merge(id, score, Math::max);
+                    }
+                });
+            }
+
+            // 🛫 Совпадения по аэропортам вылета / прилёта
+            for (String iata : matchingAirports(queryGrams)) {
+                IndexedAirport a = airports.get(iata);
+                int score = Math.max(match(a.iataCode, q) * IATA_WEIGHT, Math.max(
+                        match(a.city, q) * CITY_WEIGHT,
+                        match(a.name, q) * AIRPORT_NAME_WEIGHT));
+                if (score == 0) {
+                    continue;
+                }
+                IntPostings dep = departuresByAirport.get(iata);
+                if (dep != null) {
+                    dep.forEach(id -> scores.merge(id, score, Math::max));
+                }
+                IntPostings arr = arrivalsByAirport.get(iata);
+                if (arr != null) {
+                    arr.forEach(id -> scores.merge(id, score, Math::max));
+                }
+            }
+
+            return topK(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return flights.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------- внутренние операции (под write-lock) ----------
+
+    private void markChangedLocked(Integer flightId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(flightId);
+        }
+    }
+
+    private void indexLocked(Flight flight) {
+        indexAirportLocked(flight.getDepartureAirport());
+        indexAirportLocked(flight.getArrivalAirport());
+        indexFlightLocked(flight.getId(), flight.getFlightNumber(), flight.getAirline(),
+                iataOf(flight.getDepartureAirport()), iataOf(flight.getArrivalAirport()));
+    }
+
+    private void indexFlightLocked(Integer id, String flightNumber, String airline,
+                                   String departureIata, String arrivalIata) {
+        IndexedFlight f = new IndexedFlight(normalize(flightNumber), normalize(airline), departureIata, arrivalIata);
+        flights.put(id, f);
+
+        for (String gram : documentGrams(f.flightNumber, f.airline)) {
+            flightGrams.computeIfAbsent(gram, k -> new IntPostings()).add(id);
+        }
+
+        if (f.departureIata != null) {
+            departuresByAirport.computeIfAbsent(f.departureIata, k -> new IntPostings()).add(id);
+        }
+        if (f.arrivalIata != null) {
+            arrivalsByAirport.computeIfAbsent(f.arrivalIata, k -> new IntPostings()).add(id);
+        }
+    }
+
+    private void removeLocked(Integer flightId) {
+        IndexedFlight f = flights.remove(flightId);
+        if (f == null) {
+            return;
+        }
+        for (String gram : documentGrams(f.flightNumber, f.airline)) {
+            IntPostings postings = flightGrams.get(gram);
+            if (postings != null && postings.remove(flightId) && postings.size() == 0) {
+                flightGrams.remove(gram);
+            }
+        }
+        if (f.departureIata != null && departuresByAirport.containsKey(f.departureIata)) {
+            departuresByAirport.get(f.departureIata).remove(flightId);
+        }
+        if (f.arrivalIata != null && arrivalsByAirport.containsKey(f.arrivalIata)) {
+            arrivalsByAirport.get(f.arrivalIata).remove(flightId);
+        }
+    }
+
+    private void indexAirportLocked(Airport airport) {
+        if (airport == null || airport.getIataCode() == null) {
+            return;
+        }
+        // 🔗 Ленивая ссылка на уже известный аэропорт: поля не изменились, загружать незачем
+        if (!Hibernate.isInitialized(airport) && airports.containsKey(airport.getIataCode())) {
+            return;
+        }
+        indexAirportLocked(airport.getIataCode(), airport.getCity(), airport.getName());
+    }
+
+    private void indexAirportLocked(String iata, String city, String name) {
+        if (iata == null) {
+            return;
+        }
+        IndexedAirport a = new IndexedAirport(normalize(iata), normalize(city), normalize(name));
+        IndexedAirport previous = airports.put(iata, a);
+        if (a.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            for (String gram : documentGrams(previous.iataCode, previous.city, previous.name)) {
+                Set<String> codes = airportGrams.get(gram);
+                if (codes != null) {
+                    codes.remove(iata);
+                }
+            }
+        }
+        for (String gram : documentGrams(a.iataCode, a.city, a.name)) {
+            airportGrams.computeIfAbsent(gram, k -> new HashSet<>()).add(iata);
+        }
+    }
+
+    // ---------- поиск ----------
+
+    private IntPostings intersect(Set<String> grams, Map<String, IntPostings> index) {
+        List<IntPostings> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            IntPostings postings = index.get(gram);
+            if (postings == null) {
+                return null;
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(IntPostings::size));
+
+        IntPostings result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.size() > 0; i++) {
+            IntPostings next = lists.get(i);
+            IntPostings narrowed = new IntPostings();
+            result.forEach(id -> {
+                if (next.contains(id)) {
+                    narrowed.add(id);
+                }
+            });
+            result = narrowed;
+        }
+        return result;
+    }
+
+    private Set<String> matchingAirports(Set<String> grams) {
+        Set<String> result = null;
+        for (String gram : grams) {
+            Set<String> codes = airportGrams.get(gram);
+            if (codes == null) {
+                return Set.of();
+            }
+            if (result == null) {
+                result = new HashSet<>(codes);
+            } else {
+                result.retainAll(codes);
+            }
+        }
+        return result == null ? Set.of() : result;
+    }
+
+    private static List<Integer> topK(Map<Integer, Integer> scores, int limit) {
+        // min-heap: на вершине худший из лучших
+        Comparator<Map.Entry<Integer, Integer>> byRank = Map.Entry.<Integer, Integer>comparingByValue()
+                .thenComparing(Map.Entry.<Integer, Integer>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Integer, Integer>> heap = new PriorityQueue<>(limit + 1, byRank);
+        for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+            heap.offer(entry);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(heap);
+        ranked.sort(byRank.reversed());
+        List<Integer> ids = new ArrayList<>(ranked.size());
+        ranked.forEach(e -> ids.add(e.getKey()));
+        return ids;
+    }
+
+    private static int match(String field, String q) {
+        if (field == null || field.isEmpty()) {
+            return 0;
+        }
+        if (field.equals(q)) {
+            return EXACT;
+        }
+        if (field.startsWith(q)) {
+            return PREFIX;
+        }
+        int pos = field.indexOf(q);
+        if (pos < 0) {
+            return 0;
+        }
+        return Character.isLetterOrDigit(field.charAt(pos - 1)) ? CONTAINS : WORD_PREFIX;
+    }
+
+    // ---------- n-граммы ----------
+
+    private static Set<String> queryGrams(String q) {
+        if (q.length() < GRAM) {
+            return Set.of(WORD_START + q);
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            grams.add(q.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /** Триграммы значений + префиксы слов длиной 1–2 (для коротких запросов) */
+    private static Set<String> documentGrams(String... values) {
+        Set<String> grams = new HashSet<>();
+        for (String value : values) {
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+            for (String word : value.split("[^\\p{L}\\p{N}]+")) {
+                for (int len = 1; len < GRAM && len <= word.length(); len++) {
+                    grams.add(WORD_START + word.substring(0, len));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String iataOf(Airport airport) {
+        return airport != null ? airport.getIataCode() : null;
+    }
+
+    private record IndexedFlight(String flightNumber, String airline, String departureIata, String arrivalIata) {
+    }
+
+    private record IndexedAirport(String iataCode, String city, String name) {
+    }
+
+    /**
+     * Отсортированный список id без упаковки в Integer — компактнее HashSet на миллионе рейсов.
+     * Id растут монотонно, поэтому добавление почти всегда идёт в конец.
+     */
+    private static final class IntPostings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            int insertAt = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(ids[i]);
+            }
+        }
+    }
+}
@@ -2,26 +2,41 @@ package com.example.lowflightzone.services;
 
 import com.example.lowflightzone.dao.AirportDao;
 import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dao.FlightSubscriptionDao;
 import com.example.lowflightzone.dto.AirportDto;
 import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.dto.FlightPageDto;
 import com.example.lowflightzone.entity.Airport;
 import com.example.lowflightzone.entity.Flight;
-import com.example.lowflightzone.entity.FlightSubscription;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.events.FlightsBatchChangedEvent;
 import com.example.lowflightzone.exceptions.AirportException;
 import com.example.lowflightzone.exceptions.FlightException;
 import com.example.lowflightzone.exceptions.ValidationException;
 import com.example.lowflightzone.repositories.FlightRepository;
-import com.example.lowflightzone.services.NotificationService;
-import jakarta.annotation.PostConstruct;
-import jakarta.transaction.Transactional;
+import com.example.lowflightzone.repositories.FlightRow;
+import com.example.lowflightzone.security.SecurityUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -29,195 +44,185 @@ public class FlightService {
 
     private static final String FLIGHT_NOT_FOUND_MESSAGE = "Рейс не найден: ";
     private static final String FLIGHT_ALREADY_EXISTS_MESSAGE = "Рейс с таким номером уже существует: ";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int EXPORT_FLUSH_EVERY = 1000;
 
     private final FlightDao flightDao;
     private final AirportDao airportDao;
     private final FlightRepository flightRepository;
-    private final NotificationService notificationService;
+    private final FlightSearchIndex searchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FlightSubscriptionDao subscriptionDao;
+    private final SecurityUtils securityUtils;
+    private final ObjectMapper objectMapper;
+    private final FlightDtoCache flightDtoCache;
+    private final FlightDtoMapper flightDtoMapper;
+    private final AirportCatalog airportCatalog;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public FlightService(FlightDao flightDao, AirportDao airportDao, FlightRepository flightRepository, NotificationService notificationService) {
+    public FlightService(FlightDao flightDao, AirportDao airportDao, FlightRepository flightRepository,
+                         FlightSearchIndex searchIndex,
+                         ApplicationEventPublisher eventPublisher, FlightSubscriptionDao subscriptionDao,
+                         SecurityUtils securityUtils, ObjectMapper objectMapper,
+                         FlightDtoCache flightDtoCache, FlightDtoMapper flightDtoMapper,
+                         AirportCatalog airportCatalog) {
         this.flightDao = flightDao;
         this.airportDao = airportDao;
         this.flightRepository = flightRepository;
-        this.notificationService = notificationService;
+        this.searchIndex = searchIndex;
+        this.eventPublisher = eventPublisher;
+        this.subscriptionDao = subscriptionDao;
+        this.securityUtils = securityUtils;
+        this.objectMapper = objectMapper;
+        this.flightDtoCache = flightDtoCache;
+        this.flightDtoMapper = flightDtoMapper;
+        this.airportCatalog = airportCatalog;
     }
 
-    public List<FlightDto> getFlights(String departureAirport, String arrivalAirport, String status) {
-        List<FlightDto> flights = flightDao.findAll().stream()
-                .filter(flight -> departureAirport == null ||
-                        flight.getDepartureAirport().getIataCode().equals(departureAirport))
-                .filter(flight -> arrivalAirport == null ||
-                        flight.getArrivalAirport().getIataCode().equals(arrivalAirport))
-                .filter(flight -> status == null || flight.getStatus().toString().equals(status))
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public FlightPageDto getFlights(String departureAirport, String arrivalAirport, String status,
+                                    String cursor, Integer size, String sort) {
+        int pageSize = (size == null) ? DEFAULT_PAGE_SIZE : Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        boolean descending = parseSortDirection(sort);
+        Flight.FlightStatus statusFilter = parseStatus(status);
+
+        LocalDateTime afterDeparture = null;
+        Integer afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decodeCursor(cursor);
+            afterDeparture = LocalDateTime.parse(parts[0]);
+            afterId = Integer.valueOf(parts[1]);
+        }
+
+        // 📄 Берём на одну строку больше, чтобы узнать, есть ли следующая страница
+        List<FlightRow> rows = flightDao.findPage(departureAirport, arrivalAirport, statusFilter,
+                afterDeparture, afterId, descending, pageSize + 1);
 
-        if (flights.isEmpty()) {
+        boolean hasNext = rows.size() > pageSize;
+        List<FlightRow> pageRows = hasNext ? rows.subList(0, pageSize) : rows;
+
+        if (pageRows.isEmpty() && afterId == null) {
             throw new FlightException("Рейсы с такими параметрами не найдены");
         }
-        return flights;
-    }
 
-    public FlightDto getFlightByNumber(String flightNumber) {
-        Flight flight = flightDao.findByFlightNumber(flightNumber)
-                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + flightNumber));
-        return convertToDto(flight);
+        Set<Integer> subscribedIds = subscribedFlightIds(securityUtils.getCurrentUserEmail().orElse(null));
+
+        FlightPageDto page = new FlightPageDto();
+        page.setContent(pageRows.stream()
+                .map(row -> convertToDtoWithSubscription(row, subscribedIds))
+                .collect(Collectors.toList()));
+        page.setSize(pageRows.size());
+        page.setHasNext(hasNext);
+        page.setSort(descending ? "desc" : "asc");
+        if (hasNext) {
+            FlightRow last = pageRows.get(pageRows.size() - 1);
+            page.setNextCursor(encodeCursor(last.scheduledDeparture(), last.id()));
+        }
+        return page;
     }
 
-    public List<FlightDto> searchFlights(String query, String userEmail) {
-        return flightRepository
-                .findByFlightNumberContainingIgnoreCaseOrDepartureAirport_CityContainingIgnoreCaseOrArrivalAirport_CityContainingIgnoreCaseOrDepartureAirport_IataCodeContainingIgnoreCaseOrArrivalAirport_IataCodeContainingIgnoreCaseOrDepartureAirport_NameContainingIgnoreCaseOrArrivalAirport_NameContainingIgnoreCase(
-                        query, query, query, query, query, query, query
-                )
-                .stream()
-                .map(flight -> convertToDtoWithSubscription(flight, userEmail))
-                .collect(Collectors.toList());
+    private boolean parseSortDirection(String sort) {
+        if (sort == null || sort.isBlank() || sort.equalsIgnoreCase("asc")) {
+            return false;
+        }
+        if (sort.equalsIgnoreCase("desc")) {
+            return true;
+        }
+        throw new ValidationException("Некорректное направление сортировки: " + sort + " (ожидается asc или desc)");
     }
 
-    private FlightDto convertToDtoWithSubscription(Flight flight, String userEmail) {
-        FlightDto dto = convertToDto(flight);
-
-        if (userEmail != null && flight.getSubscriptions() != null) {
-            boolean isSubscribed = flight.getSubscriptions().stream()
-                    .anyMatch(sub -> sub.getUser() != null
-                            && sub.getUser().getEmail().equalsIgnoreCase(userEmail)
-                            && sub.getStatus() == FlightSubscription.SubscriptionStatus.ACTIVE);
-
-            dto.setSubscribed(isSubscribed);
-        } else {
-            dto.setSubscribed(false);
+    private Flight.FlightStatus parseStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        try {
+            return Flight.FlightStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестный статус рейса: " + status);
         }
-
-        return dto;
     }
 
-    @Transactional
-    public void recalculateDelayedFlights() {
-        final LocalDateTime now = LocalDateTime.now();
-        List<Flight> flights = flightRepository.findAll();
-
-        for (Flight f : flights) {
-            boolean updated = false;
-
-            // ❌ Пропускаем отменённые рейсы
-            if (f.getStatus() == Flight.FlightStatus.CANCELLED) {
-                continue;
-            }
-
-            int delay = (f.getDelayMinutes() != null) ? f.getDelayMinutes() : 0;
-
-            // ✅ 1. Пересчёт estimated на основе расписания + задержки
-            LocalDateTime expectedEstDep = (f.getScheduledDeparture() != null)
-                    ? f.getScheduledDeparture().plusMinutes(delay)
-                    : null;
-            LocalDateTime expectedEstArr = (f.getScheduledArrival() != null)
-                    ? f.getScheduledArrival().plusMinutes(delay)
-                    : null;
-
-            if (!Objects.equals(f.getEstimatedDeparture(), expectedEstDep)) {
-                f.setEstimatedDeparture(expectedEstDep);
-                updated = true;
-            }
-            if (!Objects.equals(f.getEstimatedArrival(), expectedEstArr)) {
-                f.setEstimatedArrival(expectedEstArr);
-                updated = true;
-            }
-
-            // ✅ 2. Сбрасываем actual, если вылет или прилёт ещё не наступили
-            if (expectedEstDep != null && now.isBefore(expectedEstDep)) {
-                if (f.getActualDeparture() != null) {
-                    f.setActualDeparture(null);
-                    updated = true;
-                }
-            }
-            if (expectedEstArr != null && now.isBefore(expectedEstArr)) {
-                if (f.getActualArrival() != null) {
-                    f.setActualArrival(null);
-                    updated = true;
-                }
-            }
+    private String encodeCursor(LocalDateTime scheduledDeparture, Integer id) {
+        String raw = scheduledDeparture + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-            // ✅ 3. Устанавливаем actualDeparture корректно
-            if (f.getScheduledDeparture() != null) {
-                // 📅 Без задержки — сравниваем с расписанием
-                if (delay == 0 && now.isAfter(f.getScheduledDeparture())) {
-                    if (!Objects.equals(f.getActualDeparture(), f.getScheduledDeparture())) {
-                        f.setActualDeparture(f.getScheduledDeparture());
-                        updated = true;
-                    }
-                }
-                // ⏱ С задержкой — сравниваем с estimated
-                if (delay > 0 && expectedEstDep != null && now.isAfter(expectedEstDep)) {
-                    if (!Objects.equals(f.getActualDeparture(), expectedEstDep)) {
-                        f.setActualDeparture(expectedEstDep);
-                        updated = true;
-                    }
-                }
-            }
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 2);
+            LocalDateTime.parse(parts[0]);
+            Integer.parseInt(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new ValidationException("Некорректный курсор страницы: " + cursor);
+        }
+    }
 
-            // ✅ 4. Устанавливаем actualArrival корректно
-            if (f.getScheduledArrival() != null) {
-                // 📅 Без задержки — сравниваем с расписанием
-                if (delay == 0 && now.isAfter(f.getScheduledArrival())) {
-                    if (!Objects.equals(f.getActualArrival(), f.getScheduledArrival())) {
-                        f.setActualArrival(f.getScheduledArrival());
-                        updated = true;
-                    }
+    /**
+     * Потоковая выгрузка всех рейсов в NDJSON (одна строка — один FlightDto).
+     * Строки читаются курсором с fetch size и сразу отсоединяются от контекста,
+     * поэтому память не зависит от размера таблицы.
+     */
+    @Transactional(readOnly = true)
+    public void exportFlights(OutputStream out) throws IOException {
+        long exported = 0;
+        try (Stream<Flight> flights = flightDao.streamAllForExport()) {
+            for (Flight flight : (Iterable<Flight>) flights::iterator) {
+                out.write(objectMapper.writeValueAsBytes(flightDtoMapper.toDto(flight)));
+                out.write('\n');
+                entityManager.detach(flight);
+
+                if (++exported % EXPORT_FLUSH_EVERY == 0) {
+                    out.flush();
                 }
-                // ⏱ С задержкой — сравниваем с estimated
-                if (delay > 0 && expectedEstArr != null && now.isAfter(expectedEstArr)) {
-                    if (!Objects.equals(f.getActualArrival(), expectedEstArr)) {
-                        f.setActualArrival(expectedEstArr);
-                        updated = true;
-                    }
-                }
-            }
-
-            // ✅ 5. Определяем статус
-            Flight.FlightStatus newStatus;
-            if (delay > 0) {
-                newStatus = Flight.FlightStatus.DELAYED;
-            } else {
-                newStatus = Flight.FlightStatus.SCHEDULED;
             }
+        }
+        out.flush();
+        log.info("📤 Выгружено рейсов: {}", exported);
+    }
 
-            if (f.getActualDeparture() != null && now.isAfter(f.getActualDeparture())) {
-                newStatus = Flight.FlightStatus.DEPARTED;
-            }
+    public FlightDto getFlightByNumber(String flightNumber) {
+        return flightDtoCache.getByNumber(flightNumber,
+                        () -> flightDao.findByFlightNumber(flightNumber).map(flightDtoMapper::toDto))
+                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + flightNumber));
+    }
 
-            if (f.getActualArrival() != null && now.isAfter(f.getActualArrival())) {
-                newStatus = Flight.FlightStatus.ARRIVED;
-            }
+    @Transactional(readOnly = true)
+    public List<FlightDto> searchFlights(String query, String userEmail, int limit) {
+        // 🔎 Ранжированные id из in-memory индекса, затем одна выборка по id
+        List<Integer> rankedIds = searchIndex.search(query, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE));
+        if (rankedIds.isEmpty()) {
+            return List.of();
+        }
 
-            if (f.getStatus() != newStatus) {
-                f.setStatus(newStatus);
-                updated = true;
-            }
+        Map<Integer, FlightRow> byId = flightDao.findRowsByIds(rankedIds).stream()
+                .collect(Collectors.toMap(FlightRow::id, Function.identity()));
+        Set<Integer> subscribedIds = subscribedFlightIds(userEmail);
 
-            // ✅ 6. Финализация
-            if (updated) {
-                f.setLastUpdated(now);
-                flightRepository.save(f);
-                log.info("✈️ Пересчитан рейс {} — status={} | delay={} | estDep={} estArr={} | actDep={} actArr={}",
-                        f.getFlightNumber(), f.getStatus(), f.getDelayMinutes(),
-                        f.getEstimatedDeparture(), f.getEstimatedArrival(),
-                        f.getActualDeparture(), f.getActualArrival());
-            }
-        }
+        return rankedIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(row -> convertToDtoWithSubscription(row, subscribedIds))
+                .collect(Collectors.toList());
     }
 
-    /** Запуск при старте */
-    @PostConstruct
-    public void runRecalculationOnStartup() {
-        log.info("🚀 Пересчёт рейсов при старте…");
-        recalculateDelayedFlights();
+    /** Активные подписки пользователя — один запрос на весь ответ, а не по рейсу */
+    private Set<Integer> subscribedFlightIds(String userEmail) {
+        if (userEmail == null || userEmail.isBlank()) {
+            return Set.of();
+        }
+        return subscriptionDao.findActiveFlightIdsByUserEmail(userEmail);
     }
 
-    /** (опционально) Периодический пересчёт каждые 5 минут */
-    @Scheduled(fixedDelay = 5 * 60 * 1000)
-    public void recalcScheduler() {
-        recalculateDelayedFlights();
+    private FlightDto convertToDtoWithSubscription(FlightRow row, Set<Integer> subscribedFlightIds) {
+        FlightDto dto = flightDtoMapper.toDto(row);
+        dto.setSubscribed(subscribedFlightIds.contains(row.id()));
+        return dto;
     }
 
     public FlightDto addFlight(FlightDto flightDto) {
@@ -229,8 +234,9 @@ public class FlightService {
 
         Flight flight = convertToEntity(flightDto);
         Flight savedFlight = flightDao.save(flight);
+        eventPublisher.publishEvent(FlightChangedEvent.created(savedFlight));
 
-        return convertToDto(savedFlight);
+        return flightDtoMapper.toDto(savedFlight);
     }
 
     public void deleteFlightById(Integer id) {
@@ -238,6 +244,7 @@ public class FlightService {
                 .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + id));
 
         flightDao.deleteById(id);
+        eventPublisher.publishEvent(FlightChangedEvent.deleted(id));
     }
 
     @Transactional
@@ -253,17 +260,13 @@ public class FlightService {
 
         // ✈️ Обновляем аэропорты через их коды
         if (updatedFlightDto.getDepartureAirport() != null) {
-            Airport departureAirport = airportDao.findByIataCode(
-                    updatedFlightDto.getDepartureAirport().getIataCode()
-            ).orElseThrow(() -> new AirportException("Аэропорт вылета не найден"));
-            flight.setDepartureAirport(departureAirport);
+            flight.setDepartureAirport(resolveAirport(
+                    updatedFlightDto.getDepartureAirport().getIataCode(), "Аэропорт вылета не найден"));
         }
 
         if (updatedFlightDto.getArrivalAirport() != null) {
-            Airport arrivalAirport = airportDao.findByIataCode(
-                    updatedFlightDto.getArrivalAirport().getIataCode()
-            ).orElseThrow(() -> new AirportException("Аэропорт прибытия не найден"));
-            flight.setArrivalAirport(arrivalAirport);
+            flight.setArrivalAirport(resolveAirport(
+                    updatedFlightDto.getArrivalAirport().getIataCode(), "Аэропорт прибытия не найден"));
         }
 
         // ✏️ Обновляем остальные поля
@@ -274,16 +277,22 @@ public class FlightService {
         flight.setDelayMinutes(updatedFlightDto.getDelayMinutes());
 
         Flight updatedFlight = flightDao.save(flight);
+        eventPublisher.publishEvent(FlightChangedEvent.updated(updatedFlight));
 
-        // 📢 Проверяем: если статус или время изменились — отправляем уведомление
-        boolean statusChanged = !Objects.equals(oldStatus, updatedFlight.getStatus());
-        boolean departureChanged = !Objects.equals(oldDeparture, updatedFlight.getScheduledDeparture());
-
-        if (statusChanged || departureChanged) {
-            notificationService.notifySubscribersAboutFlightUpdate(updatedFlight);
+        // 📢 Если статус или время изменились — уведомление уйдёт после коммита, в фоне
+        Set<String> changedFields = new LinkedHashSet<>();
+        if (!Objects.equals(oldStatus, updatedFlight.getStatus())) {
+            changedFields.add("status");
+        }
+        if (!Objects.equals(oldDeparture, updatedFlight.getScheduledDeparture())) {
+            changedFields.add("scheduledDeparture");
+        }
+        if (!changedFields.isEmpty()) {
+            eventPublisher.publishEvent(new FlightsBatchChangedEvent(
+                    List.of(new FlightsBatchChangedEvent.Change(updatedFlight, changedFields))));
         }
 
-        return convertToDto(updatedFlight);
+        return flightDtoMapper.toDto(updatedFlight);
     }
 
     public FlightDto patchFlight(Integer id, FlightDto partialFlightDto) {
@@ -297,14 +306,12 @@ public class FlightService {
             flight.setAirline(partialFlightDto.getAirline());
         }
         if (partialFlightDto.getDepartureAirport() != null) {
-            Airport departureAirport = airportDao.findByIataCode(partialFlightDto.getDepartureAirport().getIataCode())
-                    .orElseThrow(() -> new AirportException("Аэропорт вылета не найден"));
-            flight.setDepartureAirport(departureAirport);
+            flight.setDepartureAirport(resolveAirport(
+                    partialFlightDto.getDepartureAirport().getIataCode(), "Аэропорт вылета не найден"));
         }
         if (partialFlightDto.getArrivalAirport() != null) {
-            Airport arrivalAirport = airportDao.findByIataCode(partialFlightDto.getArrivalAirport().getIataCode())
-                    .orElseThrow(() -> new AirportException("Аэропорт прибытия не найден"));
-            flight.setArrivalAirport(arrivalAirport);
+            flight.setArrivalAirport(resolveAirport(
+                    partialFlightDto.getArrivalAirport().getIataCode(), "Аэропорт прибытия не найден"));
         }
         if (partialFlightDto.getScheduledDeparture() != null) {
             flight.setScheduledDeparture(partialFlightDto.getScheduledDeparture());
@@ -317,7 +324,8 @@ public class FlightService {
         }
 
         Flight updatedFlight = flightDao.save(flight);
-        return convertToDto(updatedFlight);
+        eventPublisher.publishEvent(FlightChangedEvent.updated(updatedFlight));
+        return flightDtoMapper.toDto(updatedFlight);
     }
 
     private void validateFlightDto(FlightDto flightDto) {
@@ -338,66 +346,9 @@ public class FlightService {
         }
     }
 
-    private FlightDto convertToDto(Flight flight) {
-        FlightDto flightDto = new FlightDto();
-        flightDto.setId(flight.getId());
-        flightDto.setFlightNumber(flight.getFlightNumber());
-        flightDto.setAirline(flight.getAirline());
-
-        // ✈️ Конвертируем Airport entity в AirportDto
-        if (flight.getDepartureAirport() != null) {
-            AirportDto departureDto = new AirportDto();
-            departureDto.setIataCode(flight.getDepartureAirport().getIataCode());
-            departureDto.setName(flight.getDepartureAirport().getName());
-            departureDto.setCity(flight.getDepartureAirport().getCity());
-            departureDto.setCountry(flight.getDepartureAirport().getCountry());
-            departureDto.setAltitude(flight.getDepartureAirport().getAltitude());
-            departureDto.setLatitude(flight.getDepartureAirport().getLatitude());
-            departureDto.setLongitude(flight.getDepartureAirport().getLongitude());
-            flightDto.setDepartureAirport(departureDto);
-        }
-
-        if (flight.getArrivalAirport() != null) {
-            AirportDto arrivalDto = new AirportDto();
-            arrivalDto.setIataCode(flight.getArrivalAirport().getIataCode());
-            arrivalDto.setName(flight.getArrivalAirport().getName());
-            arrivalDto.setCity(flight.getArrivalAirport().getCity());
-            arrivalDto.setCountry(flight.getArrivalAirport().getCountry());
-            arrivalDto.setAltitude(flight.getDepartureAirport().getAltitude());
-            arrivalDto.setLatitude(flight.getArrivalAirport().getLatitude());
-            arrivalDto.setLongitude(flight.getArrivalAirport().getLongitude());
-            flightDto.setArrivalAirport(arrivalDto);
-        }
-
-        flightDto.setScheduledDeparture(flight.getScheduledDeparture());
-        flightDto.setScheduledArrival(flight.getScheduledArrival());
-        flightDto.setEstimatedDeparture(flight.getEstimatedDeparture());
-        flightDto.setEstimatedArrival(flight.getEstimatedArrival());
-        flightDto.setActualDeparture(flight.getActualDeparture());
-        flightDto.setActualArrival(flight.getActualArrival());
-        flightDto.setStatus(flight.getStatus() != null ? flight.getStatus().toString() : null);
-        flightDto.setDelayMinutes(flight.getDelayMinutes());
-        flightDto.setTerminal(flight.getTerminal());
-        flightDto.setGate(flight.getGate());
-        flightDto.setLastUpdated(flight.getLastUpdated());
-
-        // ✅ Считаем только активные подписки
-        if (flight.getSubscriptions() != null) {
-            long activeSubscriptions = flight.getSubscriptions().stream()
-                    .filter(sub -> sub.getStatus() == FlightSubscription.SubscriptionStatus.ACTIVE)
-                    .count();
-            flightDto.setSubscriptionCount((int) activeSubscriptions);
-        } else {
-            flightDto.setSubscriptionCount(0);
-        }
-
-        return flightDto;
-    }
-
     @Transactional
     public FlightDto getFlightById(Integer id) {
-        Flight flight = flightRepository.findByIdWithDetails(id)
-                .orElseThrow(() -> new FlightException("Рейс не найден: " + id));
+        FlightDto flight = getCachedFlightDto(id);
 
         // 🛠 Безопасная запись просмотра (не прерывает выполнение)
         try {
@@ -406,76 +357,20 @@ public class FlightService {
             log.warn("⚠️ Не удалось записать просмотр рейса {}: {}", id, e.getMessage());
         }
 
-        return convertToDtoSafe(flight);
+        return flight;
     }
 
-    private FlightDto convertToDtoSafe(Flight flight) {
-        FlightDto dto = new FlightDto();
-        dto.setId(flight.getId());
-        dto.setFlightNumber(flight.getFlightNumber());
-        dto.setAirline(flight.getAirline());
-        dto.setStatus(flight.getStatus() != null ? flight.getStatus().toString() : "UNKNOWN");
-        dto.setDelayMinutes(flight.getDelayMinutes());
-        dto.setTerminal(flight.getTerminal());
-        dto.setGate(flight.getGate());
-        dto.setLastUpdated(flight.getLastUpdated());
-
-        // ✈️ Аэропорты
-        if (flight.getDepartureAirport() != null) {
-            AirportDto dep = new AirportDto();
-            dep.setIataCode(flight.getDepartureAirport().getIataCode());
-            dep.setName(flight.getDepartureAirport().getName());
-            dep.setCity(flight.getDepartureAirport().getCity());
-            dep.setCountry(flight.getDepartureAirport().getCountry());
-            dep.setAltitude(flight.getDepartureAirport().getAltitude());
-            dep.setLongitude(flight.getDepartureAirport().getLongitude());
-            dep.setLatitude(flight.getDepartureAirport().getLatitude());
-            dto.setDepartureAirport(dep);
-        }
-
-        if (flight.getArrivalAirport() != null) {
-            AirportDto arr = new AirportDto();
-            arr.setIataCode(flight.getArrivalAirport().getIataCode());
-            arr.setName(flight.getArrivalAirport().getName());
-            arr.setCity(flight.getArrivalAirport().getCity());
-            arr.setCountry(flight.getArrivalAirport().getCountry());
-            arr.setAltitude(flight.getDepartureAirport().getAltitude());
-            arr.setLatitude(flight.getArrivalAirport().getLatitude());
-            arr.setLongitude(flight.getArrivalAirport().getLongitude());
-            dto.setArrivalAirport(arr);
-        }
-
-        dto.setScheduledDeparture(flight.getScheduledDeparture());
-        dto.setScheduledArrival(flight.getScheduledArrival());
-        dto.setEstimatedDeparture(flight.getEstimatedDeparture());
-        dto.setEstimatedArrival(flight.getEstimatedArrival());
-        dto.setActualDeparture(flight.getActualDeparture());
-        dto.setActualArrival(flight.getActualArrival());
-
-        // 📊 Подписки
-        int activeSubs = 0;
-        try {
-            if (flight.getSubscriptions() != null) {
-                activeSubs = (int) flight.getSubscriptions().stream()
-                        .filter(sub -> sub.getStatus() == FlightSubscription.SubscriptionStatus.ACTIVE)
-                        .count();
-            }
-        } catch (Exception e) {
-            log.warn("⚠️ Ошибка при подсчёте подписок для рейса {}: {}", flight.getId(), e.getMessage());
-        }
-        dto.setSubscriptionCount(activeSubs);
-
-        return dto;
+    /** 🗄 DTO рейса через кэш: при промахе — одна выборка с аэропортами */
+    private FlightDto getCachedFlightDto(Integer id) {
+        return flightDtoCache.getById(id, () -> flightRepository.findByIdWithDetails(id).map(flightDtoMapper::toDto))
+                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + id));
     }
 
-
-
     @Autowired
     private FlightViewHistoryService viewHistoryService;
 
     public FlightDto getFlightById(Integer id, Integer userId) {
-        Flight flight = flightDao.findById(id)
-                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + id));
+        FlightDto flight = getCachedFlightDto(id);
 
         // Записываем просмотр
         if (userId != null) {
@@ -487,7 +382,15 @@ public class FlightService {
             }
         }
 
-        return convertToDto(flight);
+        return flight;
+    }
+
+    /** Проверка по справочнику в памяти и ссылка на аэропорт без SELECT */
+    private Airport resolveAirport(String iataCode, String notFoundMessage) {
+        if (!airportCatalog.contains(iataCode)) {
+            throw new AirportException(notFoundMessage);
+        }
+        return airportDao.getReference(iataCode);
     }
 
     private Flight convertToEntity(FlightDto flightDto) {
@@ -498,15 +401,13 @@ public class FlightService {
 
         // Находим аэропорты по их кодам
         if (flightDto.getDepartureAirport() != null) {
-            Airport departureAirport = airportDao.findByIataCode(flightDto.getDepartureAirport().getIataCode())
-                    .orElseThrow(() -> new AirportException("Аэропорт вылета не найден: " + flightDto.getDepartureAirport().getIataCode()));
-            flight.setDepartureAirport(departureAirport);
+            String code = flightDto.getDepartureAirport().getIataCode();
+            flight.setDepartureAirport(resolveAirport(code, "Аэропорт вылета не найден: " + code));
         }
 
         if (flightDto.getArrivalAirport() != null) {
-            Airport arrivalAirport = airportDao.findByIataCode(flightDto.getArrivalAirport().getIataCode())
-                    .orElseThrow(() -> new AirportException("Аэропорт прибытия не найден: " + flightDto.getArrivalAirport().getIataCode()));
-            flight.setArrivalAirport(arrivalAirport);
+            String code = flightDto.getArrivalAirport().getIataCode();
+            flight.setArrivalAirport(resolveAirport(code, "Аэропорт прибытия не найден: " + code));
         }
 
         flight.setScheduledDeparture(flightDto.getScheduledDeparture());
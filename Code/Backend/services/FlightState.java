@@ -0,0 +1,40 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.repositories.FlightStateRow;
+
+import java.time.LocalDateTime;
+
+/**
+ * Компактное неизменяемое состояние рейса — ровно те поля, которые читает
+ * и вычисляет {@link FlightStatusCalculator}.
+ */
+public record FlightState(
+        Flight.FlightStatus status,
+        Integer delayMinutes,
+        LocalDateTime scheduledDeparture,
+        LocalDateTime scheduledArrival,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        LocalDateTime actualDeparture,
+        LocalDateTime actualArrival
+) {
+
+    public static FlightState of(Flight flight) {
+        return new FlightState(flight.getStatus(), flight.getDelayMinutes(),
+                flight.getScheduledDeparture(), flight.getScheduledArrival(),
+                flight.getEstimatedDeparture(), flight.getEstimatedArrival(),
+                flight.getActualDeparture(), flight.getActualArrival());
+    }
+
+    public static FlightState of(FlightStateRow row) {
+        return new FlightState(row.status(), row.delayMinutes(),
+                row.scheduledDeparture(), row.scheduledArrival(),
+                row.estimatedDeparture(), row.estimatedArrival(),
+                row.actualDeparture(), row.actualArrival());
+    }
+
+    public int delay() {
+        return delayMinutes != null ? delayMinutes : 0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.entity.Flight;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Правила пересчёта рейса по расписанию и задержке: расчётные и фактические времена, статус.
+ * <p>
+ * Чистые функции над {@link FlightState}: без БД, логов и часов — текущее время передаёт
+ * вызывающий (сервисы берут его из бина {@link java.time.Clock}). Если состояние не меняется,
+ * возвращается тот же экземпляр, без аллокаций.
+ */
+public final class FlightStatusCalculator {
+
+    /** Статус меняется строго после момента вылета/прилёта — будим чуть позже него */
+    private static final long TRANSITION_STEP_NANOS = 1_000_000;
+
+    private FlightStatusCalculator() {
+    }
+
+    /**
+     * Состояние рейса на момент now.
+     * <ol>
+     *     <li>estimated = scheduled + задержка;</li>
+     *     <li>actual сбрасывается, пока расчётный момент не наступил;</li>
+     *     <li>actual = estimated, когда расчётный момент прошёл (при неотрицательной задержке);</li>
+     *     <li>статус: ARRIVED после actualArrival, DEPARTED после actualDeparture,
+     *     иначе DELAYED при задержке, иначе SCHEDULED.</li>
+     * </ol>
+     * Отменённые рейсы не пересчитываются.
+     *
+     * @return тот же экземпляр, если ничего не изменилось
+     */
+    public static FlightState evaluate(FlightState s, LocalDateTime now) {
+        if (s.status() == Flight.FlightStatus.CANCELLED) {
+            return s;
+        }
+        int delay = s.delay();
+
+        // ✅ 1. estimated на основе расписания + задержки
+        LocalDateTime estDep = s.scheduledDeparture() != null ? s.scheduledDeparture().plusMinutes(delay) : null;
+        LocalDateTime estArr = s.scheduledArrival() != null ? s.scheduledArrival().plusMinutes(delay) : null;
+
+        // ✅ 2–3. actual: сброс до наступления, установка после
+        LocalDateTime actDep = actual(s.actualDeparture(), estDep, delay, now);
+        LocalDateTime actArr = actual(s.actualArrival(), estArr, delay, now);
+
+        // ✅ 4. Статус
+        Flight.FlightStatus status = delay > 0 ? Flight.FlightStatus.DELAYED : Flight.FlightStatus.SCHEDULED;
+        if (actDep != null && now.isAfter(actDep)) {
+            status = Flight.FlightStatus.DEPARTED;
+        }
+        if (actArr != null && now.isAfter(actArr)) {
+            status = Flight.FlightStatus.ARRIVED;
+        }
+
+        if (status == s.status()
+                && Objects.equals(estDep, s.estimatedDeparture())
+                && Objects.equals(estArr, s.estimatedArrival())
+                && Objects.equals(actDep, s.actualDeparture())
+                && Objects.equals(actArr, s.actualArrival())) {
+            return s;
+        }
+        return new FlightState(status, s.delayMinutes(), s.scheduledDeparture(), s.scheduledArrival(),
+                estDep, estArr, actDep, actArr);
+    }
+
+    /**
+     * Ближайший момент, когда {@link #evaluate} изменит рейс: now, если рейс уже рассогласован
+     * (например, после правки задержки), иначе — сразу после расчётного вылета или прилёта.
+     *
+     * @return null, если переходов больше не будет (отменён, уже прибыл, нет расписания)
+     */
+    public static LocalDateTime nextTransition(FlightState s, LocalDateTime now) {
+        if (s.status() == Flight.FlightStatus.CANCELLED) {
+            return null;
+        }
+        if (evaluate(s, now) != s) {
+            return now;
+        }
+        int delay = s.delay();
+        return nextTransition(
+                s.scheduledDeparture() != null ? s.scheduledDeparture().plusMinutes(delay) : null,
+                s.scheduledArrival() != null ? s.scheduledArrival().plusMinutes(delay) : null,
+                now);
+    }
+
+    /** Следующий переход уже согласованного рейса по его расчётным временам вылета и прилёта */
+    public static LocalDateTime nextTransition(LocalDateTime departure, LocalDateTime arrival, LocalDateTime now) {
+        return earliestAfter(now, earliestAfter(now, null, departure), arrival);
+    }
+
+    private static LocalDateTime actual(LocalDateTime current, LocalDateTime estimated, int delay, LocalDateTime now) {
+        if (estimated == null) {
+            return current;
+        }
+        if (now.isBefore(estimated)) {
+            return null;
+        }
+        // При нулевой задержке estimated совпадает с расписанием
+        if (delay >= 0 && now.isAfter(estimated)) {
+            return estimated;
+        }
+        return current;
+    }
+
+    private static LocalDateTime earliestAfter(LocalDateTime now, LocalDateTime current, LocalDateTime point) {
+        if (point == null || now.isAfter(point)) {
+            return current;
+        }
+        LocalDateTime due = point.plusNanos(TRANSITION_STEP_NANOS);
+        return (current == null || due.isBefore(current)) ? due : current;
+    }
+}
@@ -9,40 +9,49 @@ import com.example.lowflightzone.dto.UserDto;
 import com.example.lowflightzone.entity.Flight;
 import com.example.lowflightzone.entity.FlightSubscription;
 import com.example.lowflightzone.entity.User;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.events.SubscriptionActivatedEvent;
 import com.example.lowflightzone.exceptions.FlightException;
 import com.example.lowflightzone.exceptions.SubscriptionException;
 import com.example.lowflightzone.repositories.FlightSubscriptionRepository;
+import com.example.lowflightzone.repositories.SubscriptionRow;
 import com.example.lowflightzone.security.SecurityUtils;
-import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class FlightSubscriptionService {
 
     private final FlightSubscriptionDao subscriptionDao;
     private final FlightDao flightDao;
-    private final NotificationService notificationService;
     private final UserDao userDao;
     private final SecurityUtils securityUtils;
     private final FlightSubscriptionRepository flightSubscriptionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SchedulerLeases schedulerLeases;
 
     @Autowired
     public FlightSubscriptionService(FlightSubscriptionDao subscriptionDao,
                                      FlightDao flightDao,
-                                     NotificationService notificationService,
                                      UserDao userDao,
-                                     SecurityUtils securityUtils, FlightSubscriptionRepository flightSubscriptionRepository) {
+                                     SecurityUtils securityUtils, FlightSubscriptionRepository flightSubscriptionRepository,
+                                     ApplicationEventPublisher eventPublisher, SchedulerLeases schedulerLeases) {
         this.subscriptionDao = subscriptionDao;
         this.flightDao = flightDao;
-        this.notificationService = notificationService;
         this.userDao = userDao;
         this.securityUtils = securityUtils;
         this.flightSubscriptionRepository = flightSubscriptionRepository;
+        this.eventPublisher = eventPublisher;
+        this.schedulerLeases = schedulerLeases;
     }
 
     /**
@@ -50,6 +59,7 @@ public class FlightSubscriptionService {
      * ✅ Поведение: если была подписка со статусом CANCELLED — меняем её на ACTIVE (реактивация),
      *               если активной нет и прошлых не было — создаём новую.
      */
+    @Transactional
     public FlightSubscriptionDto subscribeFlexible(
             Integer flightId,
             String flightNumber,
@@ -120,8 +130,13 @@ public class FlightSubscriptionService {
             saved = subscriptionDao.save(sub);
         }
 
-        // 📬 Отправляем подтверждение подписки
-        notificationService.sendSubscriptionConfirmation(saved);
+        // 🔢 И реактивация, и новая подписка добавляют одну ACTIVE
+        flightDao.incrementActiveSubscriptions(flight.getId());
+        eventPublisher.publishEvent(FlightChangedEvent.subscriptionsChanged(flight.getId()));
+
+        // 📬 Подтверждение уходит после коммита: push по сети не держит блокировку строки рейса
+        eventPublisher.publishEvent(new SubscriptionActivatedEvent(saved.getId(), finalFlightNumber,
+                saved.getEndpoint(), saved.getP256dh(), saved.getAuth()));
 
         return convertToDto(saved);
     }
@@ -157,8 +172,13 @@ public class FlightSubscriptionService {
                     .filter(s -> s.getId().equals(subscriptionId))
                     .findFirst()
                     .orElseThrow(() -> new SubscriptionException("Подписка не найдена: id=" + subscriptionId));
+            boolean wasActive = sub.getStatus() == FlightSubscription.SubscriptionStatus.ACTIVE;
             sub.setStatus(FlightSubscription.SubscriptionStatus.CANCELLED);
             subscriptionDao.save(sub);
+            if (wasActive) {
+                flightDao.decrementActiveSubscriptions(sub.getFlight().getId());
+                eventPublisher.publishEvent(FlightChangedEvent.subscriptionsChanged(sub.getFlight().getId()));
+            }
             return;
         }
 
@@ -178,26 +198,46 @@ public class FlightSubscriptionService {
 
         sub.setStatus(FlightSubscription.SubscriptionStatus.CANCELLED);
         subscriptionDao.save(sub);
+        flightDao.decrementActiveSubscriptions(sub.getFlight().getId());
+        eventPublisher.publishEvent(FlightChangedEvent.subscriptionsChanged(sub.getFlight().getId()));
+    }
+
+    /** Фоновая сверка денормализованного счётчика подписок (раз в 30 минут) */
+    @Scheduled(fixedDelay = 30 * 60 * 1000, initialDelay = 60 * 1000)
+    public void reconcileActiveSubscriptionCounts() {
+        // Сверка одна на кластер — выполняет только лидер
+        if (!schedulerLeases.isLeader()) {
+            return;
+        }
+        int fixed = flightDao.reconcileActiveSubscriptionCounts();
+        if (fixed > 0) {
+            log.warn("🔄 Счётчик активных подписок исправлен у {} рейсов", fixed);
+        }
     }
 
 
 
     // ----- Прочие методы (без изменений по сути) -----
 
+    // 📋 Списки читаются плоскими строками: без сущностей и ленивой догрузки рейса/пользователя
+
+    @Transactional(readOnly = true)
     public List<FlightSubscriptionDto> getUserSubscriptions(String userEmail) {
-        return subscriptionDao.findByUserEmail(userEmail).stream()
+        return subscriptionDao.findActiveRowsByUserEmail(userEmail).stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
     public List<FlightSubscriptionDto> getSubscriptionsByUserId(Integer userId) {
-        return subscriptionDao.findActiveByUserId(userId).stream()
+        return subscriptionDao.findActiveRowsByUserId(userId).stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
     public List<FlightSubscriptionDto> getSubscriptionsForFlight(String flightNumber) {
-        return subscriptionDao.findByFlightNumberAndStatus(
+        return subscriptionDao.findRowsByFlightNumberAndStatus(
                         flightNumber, FlightSubscription.SubscriptionStatus.ACTIVE)
                 .stream()
                 .map(this::convertToDto)
@@ -218,6 +258,7 @@ public class FlightSubscriptionService {
         flightDto.setScheduledArrival(flight.getScheduledArrival());
         flightDto.setEstimatedDeparture(flight.getEstimatedDeparture());
         flightDto.setEstimatedArrival(flight.getEstimatedArrival());
+        flightDto.setSubscriptionCount(flight.getSubscriptionCount());
         dto.setFlight(flightDto);
 
         User user = subscription.getUser();
@@ -237,4 +278,37 @@ public class FlightSubscriptionService {
 
         return dto;
     }
+
+    private FlightSubscriptionDto convertToDto(SubscriptionRow row) {
+        FlightSubscriptionDto dto = new FlightSubscriptionDto();
+        dto.setId(row.id());
+
+        FlightDto flightDto = new FlightDto();
+        flightDto.setId(row.flightId());
+        flightDto.setFlightNumber(row.flightNumber());
+        flightDto.setAirline(row.airline());
+        flightDto.setStatus(row.flightStatus() != null ? row.flightStatus().toString() : null);
+        flightDto.setScheduledDeparture(row.scheduledDeparture());
+        flightDto.setScheduledArrival(row.scheduledArrival());
+        flightDto.setEstimatedDeparture(row.estimatedDeparture());
+        flightDto.setEstimatedArrival(row.estimatedArrival());
+        flightDto.setSubscriptionCount(row.activeSubscriptionCount() != null ? row.activeSubscriptionCount() : 0);
+        dto.setFlight(flightDto);
+
+        UserDto userDto = new UserDto();
+        userDto.setId(row.userId());
+        userDto.setEmail(row.userEmail());
+        userDto.setFirstName(row.userFirstName());
+        userDto.setLastName(row.userLastName());
+        dto.setUser(userDto);
+
+        dto.setStatus(row.status() != null ? row.status().toString() : null);
+        dto.setNotificationTypes(row.notificationTypes());
+        dto.setCreatedAt(row.createdAt());
+        dto.setLastNotifiedAt(row.lastNotifiedAt());
+        dto.setNotifyBeforeHours(row.notifyBeforeHours());
+        dto.setMinDelayMinutes(row.minDelayMinutes());
+
+        return dto;
+    }
 }
@@ -0,0 +1,354 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.events.FlightChangedEvent;
+import com.example.lowflightzone.events.ShardsAcquiredEvent;
+import com.example.lowflightzone.repositories.FlightStateRow;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очередь переходов статусов рейсов, упорядоченная по времени.
+ * <p>
+ * Для каждого рейса хранится ближайший момент, когда он сменит состояние
+ * (вылет, прилёт или рассогласование после правки задержки). Один поток спит
+ * до головы очереди и пересчитывает только наступившие рейсы, поэтому работа
+ * пропорциональна числу переходов, а не числу рейсов.
+ * Изменения рейсов (update/patch/импорт/пакет) переставляют рейс в очереди через {@link FlightChangedEvent}.
+ * Полный проход остался как редкая страховка от потерянных событий.
+ * <p>
+ * На нескольких узлах очередь ведёт только владелец шарда рейса ({@link SchedulerLeases}).
+ * Изменения, сделанные на других узлах, он подбирает опросом по last_updated,
+ * а при захвате шардов (старт, падение прежнего владельца) пересчитывает их целиком.
+ * Тот же опрос переиздаёт {@link FlightChangedEvent} для всех рейсов, изменённых другими узлами
+ * (и своих шардов, и чужих): индексы и кэш DTO на этом узле должны их увидеть. Версии
+ * (last_updated), записанные самим узлом, запоминаются по событиям и не переиздаются.
+ */
+@Slf4j
+@Component
+public class FlightTransitionScheduler {
+
+    private static final int MAX_DUE_BATCH = 500;
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+    private static final Duration REFRESH_OVERLAP = Duration.ofSeconds(5);
+
+    private final FlightRecalculationService recalculationService;
+    private final StartupPhases startupPhases;
+    private final SchedulerLeases schedulerLeases;
+    private final FlightDao flightDao;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queueChanged = lock.newCondition();
+    private final TreeSet<Due> queue = new TreeSet<>();
+    private final Map<Integer, Due> dueByFlight = new HashMap<>();
+
+    private final Set<Integer> pendingTakeover = ConcurrentHashMap.newKeySet();
+    /** id → last_updated, уже известный этому узлу по событию; чистится по окну опроса */
+    private final Map<Integer, LocalDateTime> seenVersions = new ConcurrentHashMap<>();
+    private volatile LocalDateTime refreshedUpTo;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public FlightTransitionScheduler(FlightRecalculationService recalculationService, StartupPhases startupPhases,
+                                     SchedulerLeases schedulerLeases, FlightDao flightDao,
+                                     ApplicationEventPublisher eventPublisher, Clock clock) {
+        this.recalculationService = recalculationService;
+        this.startupPhases = startupPhases;
+        this.schedulerLeases = schedulerLeases;
+        this.flightDao = flightDao;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        this.refreshedUpTo = LocalDateTime.now(clock);
+    }
+
+    /**
+     * Поток переходов стартует после готовности контекста и первым делом делает полный
+     * пересчёт (он же заполняет очередь) — старт приложения его не ждёт.
+     * События, пришедшие во время прогрева, уже ставятся в очередь.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        worker = new Thread(() -> {
+            warmUp();
+            runLoop();
+        }, "flight-transitions");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /** Страховочный полный проход; интервал — flights.transitions.sweep-interval-ms (по умолчанию 6 ч) */
+    @Scheduled(fixedDelayString = "${flights.transitions.sweep-interval-ms:21600000}",
+            initialDelayString = "${flights.transitions.sweep-interval-ms:21600000}")
+    public void sweep() {
+        sweep("sweep");
+    }
+
+    private void sweep(String trigger) {
+        Map<Integer, LocalDateTime> nextTransitions = recalculationService.recalculateAll(trigger);
+        nextTransitions.forEach(this::schedule);
+        log.info("🧹 Полный пересчёт рейсов: в очереди переходов {}", size());
+    }
+
+    /** Захваченные шарды пересчитываются в потоке переходов, не в потоке продления аренды */
+    @EventListener
+    public void onShardsAcquired(ShardsAcquiredEvent event) {
+        pendingTakeover.addAll(event.getShards());
+        signal();
+    }
+
+    /** Подбор изменений с других узлов; интервал — flights.transitions.refresh-ms */
+    @Scheduled(fixedDelayString = "${flights.transitions.refresh-ms:30000}")
+    public void refreshFromDatabase() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime since = refreshedUpTo.minus(REFRESH_OVERLAP);
+        List<Integer> remote = new ArrayList<>();
+        for (FlightStateRow row : flightDao.findStatesUpdatedSince(since)) {
+            if (recalculationService.owns(row.id())) {
+                schedule(row.id(), FlightStatusCalculator.nextTransition(FlightState.of(row), now));
+            }
+            if (!isSeen(row.id(), row.lastUpdated())) {
+                remote.add(row.id());
+            }
+        }
+
+        // События об изменениях на других узлах публиковались только там; их же обработчик запомнит версии
+        for (int from = 0; from < remote.size(); from += MAX_DUE_BATCH) {
+            List<Integer> ids = remote.subList(from, Math.min(from + MAX_DUE_BATCH, remote.size()));
+            flightDao.findAllByIds(ids).forEach(f -> eventPublisher.publishEvent(FlightChangedEvent.updated(f)));
+        }
+        refreshedUpTo = now;
+        // следующий опрос начнётся с now - overlap: более старые версии он не вернёт
+        LocalDateTime horizon = now.minus(REFRESH_OVERLAP);
+        seenVersions.values().removeIf(version -> version.isBefore(horizon));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED, UPDATED -> {
+                if (event.getFlight() != null) {
+                    remember(event.getFlightId(), event.getFlight().getLastUpdated());
+                }
+                if (recalculationService.owns(event.getFlightId())) {
+                    schedule(event.getFlightId(),
+                            FlightStatusCalculator.nextTransition(
+                                    FlightState.of(event.getFlight()), LocalDateTime.now(clock)));
+                }
+            }
+            case DELETED -> {
+                seenVersions.remove(event.getFlightId());
+                cancel(event.getFlightId());
+            }
+            case SUBSCRIPTIONS -> {
+                // поля рейса не менялись — момент перехода прежний
+            }
+        }
+    }
+
+    private void remember(Integer flightId, LocalDateTime lastUpdated) {
+        if (lastUpdated != null) {
+            seenVersions.put(flightId, lastUpdated.truncatedTo(ChronoUnit.MICROS));
+        }
+    }
+
+    /** Сравнение с точностью колонки: БД хранит микросекунды */
+    private boolean isSeen(Integer flightId, LocalDateTime lastUpdated) {
+        return lastUpdated != null && lastUpdated.truncatedTo(ChronoUnit.MICROS).equals(seenVersions.get(flightId));
+    }
+
+    /** Ставит (или переставляет) рейс на момент at; null снимает рейс с очереди */
+    public void schedule(Integer flightId, LocalDateTime at) {
+        if (at == null) {
+            cancel(flightId);
+            return;
+        }
+        lock.lock();
+        try {
+            Due previous = dueByFlight.put(flightId, new Due(at, flightId));
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            queue.add(dueByFlight.get(flightId));
+            // 🔔 Новая голова очереди — потоку нужно проснуться раньше
+            if (queue.first().flightId().equals(flightId)) {
+                queueChanged.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cancel(Integer flightId) {
+        lock.lock();
+        try {
+            Due previous = dueByFlight.remove(flightId);
+            if (previous != null) {
+                queue.remove(previous);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("queued", queue.size());
+            stats.put("nextTransition", queue.isEmpty() ? null : queue.first().at());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void warmUp() {
+        log.info("🚀 Пересчёт рейсов при старте (в фоне)…");
+        try {
+            // Фаза записывается и при ошибке — готовность не зависает, данные догонит страховочный проход
+            startupPhases.time("initialRecalculation", () -> {
+                // Сначала берём аренды: стартовый проход и так пересчитает все свои шарды
+                schedulerLeases.renew();
+                pendingTakeover.clear();
+                sweep("startup");
+            });
+        } catch (RuntimeException e) {
+            log.error("❌ Стартовый пересчёт рейсов не удался, догонит страховочный проход: {}", e.getMessage());
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                List<Integer> due = awaitDue();
+                if (!pendingTakeover.isEmpty()) {
+                    takeOver();
+                }
+                if (!due.isEmpty()) {
+                    process(due);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Ждёт, пока голова очереди не наступит, и забирает все наступившие рейсы (не больше пачки) */
+    private List<Integer> awaitDue() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (!pendingTakeover.isEmpty()) {
+                    return List.of();
+                }
+                if (queue.isEmpty()) {
+                    queueChanged.await();
+                    continue;
+                }
+                LocalDateTime now = LocalDateTime.now(clock);
+                long waitMillis = Duration.between(now, queue.first().at()).toMillis();
+                if (waitMillis > 0) {
+                    queueChanged.await(waitMillis, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+
+                List<Integer> due = new ArrayList<>();
+                while (!queue.isEmpty() && !queue.first().at().isAfter(now) && due.size() < MAX_DUE_BATCH) {
+                    Due head = queue.pollFirst();
+                    dueByFlight.remove(head.flightId());
+                    due.add(head.flightId());
+                }
+                return due;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void takeOver() {
+        Set<Integer> shards = Set.copyOf(pendingTakeover);
+        pendingTakeover.removeAll(shards);
+        try {
+            recalculationService.recalculateShards("takeover", shards).forEach(this::schedule);
+        } catch (RuntimeException e) {
+            log.error("❌ Пересчёт захваченных шардов {} не удался: {}", shards, e.getMessage());
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            queueChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Рейсы чужих шардов (аренду могли потерять, пока ждали) просто снимаются с очереди */
+    private void process(List<Integer> dueIds) {
+        List<Integer> flightIds = dueIds.stream().filter(recalculationService::owns).toList();
+        if (flightIds.isEmpty()) {
+            return;
+        }
+        try {
+            recalculationService.recalculateFlights(flightIds).forEach(this::schedule);
+        } catch (RuntimeException e) {
+            log.error("❌ Ошибка пересчёта {} рейсов, повтор через {}: {}",
+                    flightIds.size(), RETRY_DELAY, e.getMessage());
+            LocalDateTime retryAt = LocalDateTime.now(clock).plus(RETRY_DELAY);
+            flightIds.forEach(id -> schedule(id, retryAt));
+        }
+    }
+
+    private record Due(LocalDateTime at, Integer flightId) implements Comparable<Due> {
+        @Override
+        public int compareTo(Due other) {
+            int byTime = at.compareTo(other.at);
+            return byTime != 0 ? byTime : flightId.compareTo(other.flightId);
+        }
+    }
+}
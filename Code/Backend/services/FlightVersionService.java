@@ -0,0 +1,72 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.exceptions.FlightException;
+import com.example.lowflightzone.repositories.FlightVersionView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/**
+ * Версии рейсов для условных GET (ETag / Last-Modified).
+ * <p>
+ * Версии читаются из БД лёгкими запросами, а не из памяти узла, поэтому ETag одинаков
+ * на всех узлах и переживает рестарт. Отдельный рейс версионируется по lastUpdated
+ * и счётчику подписок, списки — по монотонной версии коллекции (строка collection_versions,
+ * которую {@link FlightDao} увеличивает в транзакции каждой записи в flights).
+ */
+@Service
+@RequiredArgsConstructor
+public class FlightVersionService {
+
+    private static final String FLIGHT_NOT_FOUND_MESSAGE = "Рейс не найден: ";
+
+    private final FlightDao flightDao;
+
+    public FlightVersionView getVersionById(Integer id) {
+        return flightDao.findVersionById(id)
+                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + id));
+    }
+
+    public FlightVersionView getVersionByNumber(String flightNumber) {
+        return flightDao.findVersionByFlightNumber(flightNumber)
+                .orElseThrow(() -> new FlightException(FLIGHT_NOT_FOUND_MESSAGE + flightNumber));
+    }
+
+    /** Сильный ETag рейса: меняется при любом сохранении и при изменении числа подписок */
+    public String eTag(FlightVersionView version) {
+        int subscriptions = version.getActiveSubscriptionCount() != null ? version.getActiveSubscriptionCount() : 0;
+        return "\"f" + version.getId() + "-" + toMicros(version.getLastUpdated()) + "-" + subscriptions + "\"";
+    }
+
+    /** Last-Modified в миллисекундах epoch (-1, если время неизвестно) */
+    public long lastModified(FlightVersionView version) {
+        LocalDateTime lastUpdated = version.getLastUpdated();
+        return lastUpdated != null
+                ? lastUpdated.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : -1;
+    }
+
+    /**
+     * ETag списка: версия коллекции + пользователь, так как флаг subscribed персональный.
+     * Параметры запроса в ETag не входят — он и так сравнивается в пределах одного URL.
+     */
+    public String collectionETag(String userEmail) {
+        long version = flightDao.findCollectionVersion();
+        String user = userEmail != null
+                ? Integer.toHexString(userEmail.toLowerCase(Locale.ROOT).hashCode())
+                : "anon";
+        return "\"c" + version + "-" + user + "\"";
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        if (time == null) {
+            return 0;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+}
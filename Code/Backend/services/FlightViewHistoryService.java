@@ -3,11 +3,8 @@ package com.example.lowflightzone.services;
 import com.example.lowflightzone.dao.FlightDao;
 import com.example.lowflightzone.dao.FlightViewHistoryDao;
 import com.example.lowflightzone.dao.UserDao;
-import com.example.lowflightzone.dto.AirportDto;
-import com.example.lowflightzone.dto.FlightDto;
 import com.example.lowflightzone.dto.FlightViewHistoryDto;
 import com.example.lowflightzone.entity.Flight;
-import com.example.lowflightzone.entity.FlightSubscription;
 import com.example.lowflightzone.entity.FlightViewHistory;
 import com.example.lowflightzone.entity.User;
 import com.example.lowflightzone.exceptions.FlightException;
@@ -25,6 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -40,6 +38,8 @@ public class FlightViewHistoryService {
     private final FlightRepository flightRepository;
     private final UserRepository userRepository;
     private final FlightSubscriptionRepository flightSubscriptionRepository;
+    private final FlightDtoCache flightDtoCache;
+    private final FlightDtoMapper flightDtoMapper;
 
     @Transactional
     public FlightViewHistoryDto recordFlightView(Integer flightId) {
@@ -99,22 +99,16 @@ public class FlightViewHistoryService {
 
     public List<FlightViewHistoryDto> getCurrentUserRecentViews(int limit) {
         Integer userId = securityUtils.getCurrentUserIdOrThrow();
-        return viewHistoryDao.getRecentViewsByUserId(userId, limit).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return convertToDtos(viewHistoryDao.getRecentViewsByUserId(userId, limit));
     }
 
     public List<FlightViewHistoryDto> getRecentViews(Integer userId, int limit) {
-        return viewHistoryDao.getRecentViewsByUserId(userId, limit).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return convertToDtos(viewHistoryDao.getRecentViewsByUserId(userId, limit));
     }
 
     public List<FlightViewHistoryDto> getCurrentUserViewHistory() {
         Integer userId = securityUtils.getCurrentUserIdOrThrow();
-        return viewHistoryDao.getUserViewHistory(userId).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return convertToDtos(viewHistoryDao.getUserViewHistory(userId));
     }
 
     @Transactional
@@ -145,67 +139,39 @@ public class FlightViewHistoryService {
         viewHistory.setViewedAt(LocalDateTime.now());
         flightViewHistoryRepository.save(viewHistory);
 
-        return convertToDto(viewHistory);
+        return convertToDto(viewHistory, currentUserSubscribedFlightIds());
+    }
+
+
+    private List<FlightViewHistoryDto> convertToDtos(List<FlightViewHistory> history) {
+        // ❤️ Подписки текущего пользователя — одним запросом на весь список
+        Set<Integer> subscribedIds = currentUserSubscribedFlightIds();
+        return history.stream()
+                .map(vh -> convertToDto(vh, subscribedIds))
+                .collect(Collectors.toList());
     }
 
+    private Set<Integer> currentUserSubscribedFlightIds() {
+        return securityUtils.getCurrentUserEmail()
+                .map(flightSubscriptionRepository::findActiveFlightIdsByUserEmail)
+                .orElse(Set.of());
+    }
 
-    // 📌 Полное заполнение DTO + безопасная проверка подписки
-    private FlightViewHistoryDto convertToDto(FlightViewHistory vh) {
+    // 📌 DTO рейса берётся из кэша (id у ленивой ссылки доступен без загрузки), флаг подписки — из набора
+    private FlightViewHistoryDto convertToDto(FlightViewHistory vh, Set<Integer> subscribedIds) {
         FlightViewHistoryDto dto = new FlightViewHistoryDto();
         dto.setId(vh.getId());
         dto.setViewedAt(vh.getViewedAt());
         dto.setViewCount(vh.getViewCount());
 
-        Flight f = vh.getFlight();
-        if (f != null) {
-            FlightDto fd = new FlightDto();
-            fd.setId(f.getId());
-            fd.setFlightNumber(f.getFlightNumber());
-            fd.setAirline(f.getAirline());
-            fd.setScheduledDeparture(f.getScheduledDeparture());
-            fd.setScheduledArrival(f.getScheduledArrival());
-            fd.setEstimatedDeparture(f.getEstimatedDeparture());
-            fd.setEstimatedArrival(f.getEstimatedArrival());
-            fd.setActualDeparture(f.getActualDeparture());
-            fd.setActualArrival(f.getActualArrival());
-            fd.setStatus(f.getStatus() != null ? f.getStatus().name() : null);
-
-            // ✈️ Отправной аэропорт
-            if (f.getDepartureAirport() != null) {
-                AirportDto dep = new AirportDto();
-                dep.setIataCode(f.getDepartureAirport().getIataCode());
-                dep.setName(f.getDepartureAirport().getName());
-                dep.setCity(f.getDepartureAirport().getCity());
-                dep.setCountry(f.getDepartureAirport().getCountry());
-                fd.setDepartureAirport(dep);
-            }
-
-            // 🛬 Аэропорт прибытия
-            if (f.getArrivalAirport() != null) {
-                AirportDto arr = new AirportDto();
-                arr.setIataCode(f.getArrivalAirport().getIataCode());
-                arr.setName(f.getArrivalAirport().getName());
-                arr.setCity(f.getArrivalAirport().getCity());
-                arr.setCountry(f.getArrivalAirport().getCountry());
-                fd.setArrivalAirport(arr);
-            }
-
-            // ❤️ Проверяем, подписан ли текущий пользователь на рейс
-            boolean isSubscribed = false;
-            try {
-                String email = securityUtils.getCurrentUserOrThrow().getEmail();
-                isSubscribed = flightSubscriptionRepository.existsByFlight_FlightNumberAndUser_EmailAndStatus(
-                        f.getFlightNumber(),
-                        email,
-                        FlightSubscription.SubscriptionStatus.ACTIVE
-                );
-            } catch (Exception e) {
-                // если пользователь не авторизован — оставляем false
-                isSubscribed = false;
-            }
-            fd.setSubscribed(isSubscribed);
-
-            dto.setFlight(fd);
+        if (vh.getFlight() != null) {
+            Integer flightId = vh.getFlight().getId();
+            flightDtoCache.getById(flightId, () -> flightRepository.findByIdWithDetails(flightId)
+                            .map(flightDtoMapper::toDto))
+                    .ifPresent(fd -> {
+                        fd.setSubscribed(subscribedIds.contains(flightId));
+                        dto.setFlight(fd);
+                    });
         }
 
         return dto;
@@ -0,0 +1,272 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dao.FlightDao;
+import com.example.lowflightzone.dao.FlightSubscriptionDao;
+import com.example.lowflightzone.dao.NotificationOutboxDao;
+import com.example.lowflightzone.dao.OutboxRetry;
+import com.example.lowflightzone.entity.FlightSubscription;
+import com.example.lowflightzone.entity.NotificationOutbox;
+import com.example.lowflightzone.repositories.FlightRow;
+import com.example.lowflightzone.repositories.OutboxDeliveryRow;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Доставка уведомлений из таблицы notification_outbox.
+ * <p>
+ * Текст уведомления строится при отправке по текущему состоянию рейса — слитые изменения
+ * (см. {@link NotificationService#notifySubscribersAboutFlightUpdate}) уходят одним сообщением.
+ * <p>
+ * На узле работает notifications.outbox.workers воркеров — долгоживущих циклов на виртуальных
+ * потоках pushExecutor, а не задач {@code @Scheduled}: разбор большой очереди не занимает общий
+ * пул планировщика. Пустая или неполная пачка — пауза notifications.outbox.poll-ms.
+ * Воркер захватывает пачку готовых строк (claimed_by — токен захвата, claimed_until — срок),
+ * отправляет её через {@link PushFanOut} и отмечает результат пачкой: доставленные — DONE,
+ * временные ошибки (429, 5xx, сеть) откладываются с экспоненциальной задержкой, после max-attempts — FAILED.
+ * Отказы без шанса на повтор сразу FAILED; endpoint'ы, которых больше нет (404/410),
+ * отключаются пачкой через {@link DeadSubscriptionPruner}.
+ * Строки упавшего узла освобождаются по истечении claim-ttl-ms и достаются другим воркерам,
+ * поэтому доставка переживает перезапуск, а пропускная способность растёт с числом воркеров и узлов.
+ * Доставка «хотя бы один раз»: строка, захват которой истёк во время отправки, может уйти повторно.
+ */
+@Slf4j
+@Component
+public class NotificationOutboxWorker {
+
+    private final NotificationOutboxDao outboxDao;
+    private final FlightDao flightDao;
+    private final FlightSubscriptionDao subscriptionDao;
+    private final NotificationService notificationService;
+    private final PushFanOut pushFanOut;
+    private final DeadSubscriptionPruner subscriptionPruner;
+    private final ExecutorService pushExecutor;
+    private final SchedulerLeases schedulerLeases;
+    private final Clock clock;
+    private final int workers;
+    private final long pollMillis;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration claimTtl;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final Duration retention;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private volatile boolean running;
+
+    public NotificationOutboxWorker(NotificationOutboxDao outboxDao, FlightDao flightDao,
+                                    FlightSubscriptionDao subscriptionDao, NotificationService notificationService,
+                                    PushFanOut pushFanOut,
+                                    DeadSubscriptionPruner subscriptionPruner,
+                                    @Qualifier("pushExecutor") ExecutorService pushExecutor,
+                                    SchedulerLeases schedulerLeases, Clock clock,
+                                    @Value("${notifications.outbox.workers:2}") int workers,
+                                    @Value("${notifications.outbox.poll-ms:1000}") long pollMillis,
+                                    @Value("${notifications.outbox.batch-size:200}") int batchSize,
+                                    @Value("${notifications.outbox.max-attempts:8}") int maxAttempts,
+                                    @Value("${notifications.outbox.claim-ttl-ms:120000}") long claimTtlMillis,
+                                    @Value("${notifications.outbox.backoff-base-ms:5000}") long backoffBaseMillis,
+                                    @Value("${notifications.outbox.backoff-max-ms:3600000}") long backoffMaxMillis,
+                                    @Value("${notifications.outbox.retention-hours:24}") long retentionHours) {
+        this.outboxDao = outboxDao;
+        this.flightDao = flightDao;
+        this.subscriptionDao = subscriptionDao;
+        this.notificationService = notificationService;
+        this.pushFanOut = pushFanOut;
+        this.subscriptionPruner = subscriptionPruner;
+        this.pushExecutor = pushExecutor;
+        this.schedulerLeases = schedulerLeases;
+        this.clock = clock;
+        this.workers = Math.max(1, workers);
+        this.pollMillis = Math.max(10, pollMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.claimTtl = Duration.ofMillis(Math.max(1000, claimTtlMillis));
+        this.backoffBase = Duration.ofMillis(Math.max(1, backoffBaseMillis));
+        this.backoffMax = Duration.ofMillis(Math.max(backoffBaseMillis, backoffMaxMillis));
+        this.retention = Duration.ofHours(Math.max(1, retentionHours));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            pushExecutor.execute(this::runLoop);
+        }
+        log.info("📬 Запущено воркеров outbox: {}", workers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /** Полные пачки разбираются подряд, иначе — пауза до следующего опроса */
+    private void runLoop() {
+        while (running) {
+            int claimed = 0;
+            try {
+                claimed = processBatch();
+            } catch (RuntimeException e) {
+                log.error("❌ Ошибка доставки уведомлений из outbox: {}", e.getMessage());
+            }
+            if (claimed < batchSize) {
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int processBatch() {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (outboxDao.claim(token, now, now.plus(claimTtl), batchSize) == 0) {
+            return 0;
+        }
+        List<OutboxDeliveryRow> rows = outboxDao.findClaimed(token);
+        Map<Integer, FlightRow> flights = new HashMap<>();
+        flightDao.findRowsByIds(rows.stream().map(OutboxDeliveryRow::flightId).collect(Collectors.toSet()))
+                .forEach(flight -> flights.put(flight.id(), flight));
+
+        List<Long> done = new ArrayList<>();
+        List<OutboxDeliveryRow> sendable = new ArrayList<>();
+        for (OutboxDeliveryRow row : rows) {
+            if (isDeliverable(row) && flights.containsKey(row.flightId())) {
+                sendable.add(row);
+            } else {
+                // подписку или рейс удалили, подписку отменили — доставлять некому
+                done.add(row.id());
+            }
+        }
+
+        // Одинаковый текст для всех строк рейса с одним набором полей
+        Map<String, String> payloads = new HashMap<>();
+        Map<Long, PushResult> results = sendable.isEmpty() ? Map.of() : pushFanOut.deliver(sendable, row -> {
+            synchronized (payloads) {
+                return payloads.computeIfAbsent(row.flightId() + "|" + row.changedFields(), key ->
+                        notificationService.flightUpdatePayload(flights.get(row.flightId()),
+                                NotificationOutbox.splitFields(row.changedFields())));
+            }
+        });
+
+        LocalDateTime finished = LocalDateTime.now(clock);
+        List<OutboxRetry> retries = new ArrayList<>();
+        List<Integer> notifiedSubscriptions = new ArrayList<>();
+        Set<String> goneEndpoints = new HashSet<>();
+        for (OutboxDeliveryRow row : sendable) {
+            PushResult result = results.getOrDefault(row.id(), PushResult.RETRYABLE);
+            int attempts = row.attempts() + 1;
+            switch (result) {
+                case DELIVERED -> {
+                    done.add(row.id());
+                    notifiedSubscriptions.add(row.subscriptionId());
+                }
+                case GONE -> {
+                    goneEndpoints.add(row.endpoint());
+                    retries.add(new OutboxRetry(row.id(), attempts, finished, true, "Endpoint больше не существует"));
+                }
+                case REJECTED -> retries.add(new OutboxRetry(row.id(), attempts, finished, true,
+                        "Push отклонён push-сервисом"));
+                case RETRYABLE -> retries.add(new OutboxRetry(row.id(), attempts,
+                        finished.plus(backoff(attempts)), attempts >= maxAttempts,
+                        "Push не доставлен, попытка " + attempts));
+            }
+        }
+
+        if (!done.isEmpty()) {
+            outboxDao.markDone(done, token, finished);
+            delivered.addAndGet(done.size());
+        }
+        if (!notifiedSubscriptions.isEmpty()) {
+            subscriptionDao.markNotified(notifiedSubscriptions, finished);
+        }
+        if (!retries.isEmpty()) {
+            outboxDao.batchRetry(retries, token);
+            long failed = retries.stream().filter(OutboxRetry::exhausted).count();
+            retried.addAndGet(retries.size() - failed);
+            exhausted.addAndGet(failed);
+            if (failed > 0) {
+                log.warn("⚠️ Уведомлений отмечено FAILED: {}, недоступных endpoint'ов: {}",
+                        failed, goneEndpoints.size());
+            }
+        }
+        if (!goneEndpoints.isEmpty()) {
+            try {
+                subscriptionPruner.prune(goneEndpoints);
+            } catch (RuntimeException e) {
+                // строки уже FAILED; endpoint снова попадётся при следующей рассылке
+                log.warn("⚠️ Не удалось отключить мёртвые подписки: {}", e.getMessage());
+            }
+        }
+        return rows.size();
+    }
+
+    private static boolean isDeliverable(OutboxDeliveryRow row) {
+        return row.subscriptionStatus() == FlightSubscription.SubscriptionStatus.ACTIVE
+                && !isBlank(row.endpoint()) && !isBlank(row.p256dh()) && !isBlank(row.auth());
+    }
+
+    /** base · 2^(attempts-1), не больше backoff-max-ms */
+    private Duration backoff(int attempts) {
+        int shift = Math.min(attempts - 1, 30);
+        long millis = backoffBase.toMillis() << shift;
+        return millis <= 0 || millis > backoffMax.toMillis() ? backoffMax : Duration.ofMillis(millis);
+    }
+
+    /** Доставленные строки хранятся retention-hours для разбора, чистит их лидер */
+    @Scheduled(fixedDelayString = "${notifications.outbox.cleanup-ms:3600000}")
+    public void deleteDelivered() {
+        if (!schedulerLeases.isLeader()) {
+            return;
+        }
+        int deleted = outboxDao.deleteDeliveredBefore(LocalDateTime.now(clock).minus(retention));
+        if (deleted > 0) {
+            log.info("🧹 Удалено доставленных уведомлений из outbox: {}", deleted);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("batchSize", batchSize);
+        stats.put("byStatus", outboxDao.countByStatus());
+        stats.put("delivered", delivered.get());
+        stats.put("retried", retried.get());
+        stats.put("failed", exhausted.get());
+        stats.put("coalesced", notificationService.coalescedCount());
+        stats.put("pruned", subscriptionPruner.stats());
+        return stats;
+    }
+
+    private static boolean isBlank(String v) {
+        return v == null || v.isBlank();
+    }
+}
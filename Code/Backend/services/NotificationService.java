@@ -1,16 +1,26 @@
 // com.example.lowflightzone.services.NotificationService
 package com.example.lowflightzone.services;
 
+import com.example.lowflightzone.dao.NotificationOutboxDao;
 import com.example.lowflightzone.entity.Flight;
-import com.example.lowflightzone.entity.FlightSubscription;
-import com.example.lowflightzone.repositories.FlightSubscriptionRepository;
+import com.example.lowflightzone.events.FlightsBatchChangedEvent;
+import com.example.lowflightzone.events.SubscriptionActivatedEvent;
+import com.example.lowflightzone.repositories.FlightRow;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-
-import static com.example.lowflightzone.entity.FlightSubscription.SubscriptionStatus.ACTIVE;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @RequiredArgsConstructor
@@ -18,39 +28,80 @@ import static com.example.lowflightzone.entity.FlightSubscription.SubscriptionSt
 public class NotificationService {
 
     private final PushNotificationService push;
-    private final FlightSubscriptionRepository subsRepo;
+    private final NotificationOutboxDao outboxDao;
+    private final Clock clock;
+
+    /** Окно слияния: подписчик, уведомлённый в пределах окна, получит следующее уведомление в конце окна */
+    @Value("${notifications.coalesce.window-ms:60000}")
+    private long coalesceWindowMillis;
+
+    private final LongAdder coalesced = new LongAdder();
 
     public void notifySubscribersAboutFlightUpdate(Flight flight) {
-        List<FlightSubscription> subs = subsRepo.findAllByFlightIdAndStatus(flight.getId(), ACTIVE);
-        if (subs.isEmpty()) {
+        notifySubscribersAboutFlightUpdate(flight, Set.of("status"));
+    }
+
+    /**
+     * Уведомление с перечислением изменившихся полей (статус, задержка, гейт, время).
+     * Пишет в outbox в транзакции изменения рейса; отправляет {@link NotificationOutboxWorker}.
+     * <p>
+     * Частые изменения рейса сливаются: если у подписки уже есть неотправленное уведомление,
+     * поля добавляются в него, а текст строится при отправке по последнему состоянию рейса.
+     * Первое изменение уходит сразу; подписчик, уведомлённый в пределах окна
+     * notifications.coalesce.window-ms, получит следующее не раньше конца окна — одним сообщением.
+     */
+    public void notifySubscribersAboutFlightUpdate(Flight flight, Set<String> changedFields) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        long merged = outboxDao.mergeIntoPending(flight.getId(), changedFields, now);
+        int queued = outboxDao.enqueueFlightUpdate(flight.getId(), changedFields, now,
+                now.minus(Duration.ofMillis(coalesceWindowMillis)), now.plus(Duration.ofMillis(coalesceWindowMillis)));
+
+        if (merged > 0) {
+            coalesced.add(merged);
+            log.debug("🔀 Изменение рейса {} ({}) слито с {} ожидающими уведомлениями, новых: {}",
+                    flight.getFlightNumber(), changedFields, merged, queued);
+        } else if (queued == 0) {
             log.info("No active subs for flight {}", flight.getFlightNumber());
-            return;
         }
+    }
+
+    /** Сколько раз изменение рейса попало в уже ожидающее уведомление вместо нового */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
 
+    /** Текст уведомления по текущему состоянию рейса — строится при отправке */
+    public String flightUpdatePayload(FlightRow flight, Set<String> changedFields) {
         // минимальный JSON для service worker (title/body/click)
-        String payload = """
+        return """
         {
           "title": "Рейс %s",
-          "body":  "Статус: %s",
+          "body":  "%s",
           "clickUrl": "/flights/%d"
         }
-        """.formatted(flight.getFlightNumber(), flight.getStatus(), flight.getId());
-
-        for (FlightSubscription s : subs) {
-            if (isBlank(s.getEndpoint()) || isBlank(s.getP256dh()) || isBlank(s.getAuth())) {
-                // нет браузерной подписки — пропускаем
-                continue;
-            }
-            boolean ok = push.sendPush(s.getEndpoint(), s.getP256dh(), s.getAuth(), payload);
-            if (!ok) {
-                // Можно пометить подписку как INACTIVE или почистить «мертвые»
-                log.warn("Push failed for sub id={}", s.getId());
-            }
+        """.formatted(flight.flightNumber(), describeChanges(flight, changedFields), flight.id());
+    }
+
+    /**
+     * Уведомления по изменению рейсов (пакетному или одиночному) попадают в outbox перед коммитом,
+     * в той же транзакции: изменение рейса и его уведомления сохраняются или откатываются вместе.
+     * Запрос не ждёт push-отправку — её делает воркер outbox.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onFlightsBatchChanged(FlightsBatchChangedEvent event) {
+        for (FlightsBatchChangedEvent.Change change : event.getChanges()) {
+            notifySubscribersAboutFlightUpdate(change.flight(), change.changedFields());
         }
     }
 
-    public void sendSubscriptionConfirmation(FlightSubscription subscription) {
-        if (isBlank(subscription.getEndpoint()) || isBlank(subscription.getP256dh()) || isBlank(subscription.getAuth())) {
+    /**
+     * Подтверждение подписки — после коммита и на pushExecutor: медленный push-сервис
+     * не держит ни транзакцию подписки, ни поток запроса, а его ошибка не откатывает подписку.
+     */
+    @Async("pushExecutor")
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSubscriptionActivated(SubscriptionActivatedEvent event) {
+        if (isBlank(event.getEndpoint()) || isBlank(event.getP256dh()) || isBlank(event.getAuth())) {
             log.warn("❌ Не удалось отправить подтверждение — нет ключей WebPush");
             return;
         }
@@ -60,11 +111,36 @@ public class NotificationService {
       "title": "Подписка активирована",
       "body": "Вы будете получать уведомления об изменениях рейса %s"
     }
-    """.formatted(subscription.getFlight().getFlightNumber());
+    """.formatted(event.getFlightNumber());
 
-        push.sendPush(subscription.getEndpoint(), subscription.getP256dh(), subscription.getAuth(), payload);
+        try {
+            push.sendPush(event.getEndpoint(), event.getP256dh(), event.getAuth(), payload);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Подтверждение подписки id={} не отправлено: {}", event.getSubscriptionId(), e.getMessage());
+        }
     }
 
 
+    private String describeChanges(FlightRow flight, Set<String> changedFields) {
+        List<String> parts = new ArrayList<>();
+        parts.add("Статус: " + flight.status());
+        if (changedFields.contains("delayMinutes") && flight.delayMinutes() != null) {
+            parts.add("задержка " + flight.delayMinutes() + " мин");
+        }
+        if (changedFields.contains("gate") && flight.gate() != null) {
+            parts.add("гейт " + flight.gate());
+        }
+        if (changedFields.contains("terminal") && flight.terminal() != null) {
+            parts.add("терминал " + flight.terminal());
+        }
+        if (changedFields.contains("estimatedDeparture") && flight.estimatedDeparture() != null) {
+            parts.add("ожидаемый вылет " + flight.estimatedDeparture());
+        } else if (changedFields.contains("scheduledDeparture") && flight.scheduledDeparture() != null) {
+            parts.add("вылет " + flight.scheduledDeparture());
+        }
+        // Строка попадает внутрь JSON-литерала
+        return String.join(", ", parts).replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
     private boolean isBlank(String v) { return v == null || v.isBlank(); }
 }
@@ -0,0 +1,139 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.repositories.OutboxDeliveryRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Отправка пачки push на виртуальных потоках pushExecutor.
+ * <p>
+ * Каждая отправка — отдельный виртуальный поток, одновременно к push-сервисам идёт не больше
+ * notifications.push.max-concurrency запросов: остальные ждут на семафоре, не занимая
+ * ни потоков пула, ни соединений БД. Счётчики отправок по последним рейсам видны в {@link #stats()}.
+ */
+@Slf4j
+@Component
+public class PushFanOut {
+
+    private static final int MAX_TRACKED_FLIGHTS = 100;
+
+    private final PushNotificationService push;
+    private final ExecutorService pushExecutor;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    /** Счётчики по рейсам, давно не получавшие рассылок вытесняются */
+    private final Map<Integer, Progress> progressByFlight = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Progress> eldest) {
+            return size() > MAX_TRACKED_FLIGHTS;
+        }
+    };
+
+    public PushFanOut(PushNotificationService push,
+                      @Qualifier("pushExecutor") ExecutorService pushExecutor,
+                      @Value("${notifications.push.max-concurrency:32}") int maxConcurrency) {
+        this.push = push;
+        this.pushExecutor = pushExecutor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency, true);
+    }
+
+    /**
+     * Отправляет пачку и ждёт все отправки.
+     *
+     * @param payloadOf текст уведомления для строки
+     * @return id строки → результат отправки
+     */
+    public Map<Long, PushResult> deliver(List<OutboxDeliveryRow> rows, Function<OutboxDeliveryRow, String> payloadOf) {
+        Map<Long, PushResult> results = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> sends = new ArrayList<>(rows.size());
+        for (OutboxDeliveryRow row : rows) {
+            Progress progress = progress(row.flightId());
+            sends.add(CompletableFuture.runAsync(() -> {
+                PushResult result = send(row, payloadOf.apply(row));
+                results.put(row.id(), result);
+                progress.record(result);
+            }, pushExecutor));
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+        return results;
+    }
+
+    private PushResult send(OutboxDeliveryRow row, String payload) {
+        try {
+            permits.acquire();
+            try {
+                return push.sendPush(row.endpoint(), row.p256dh(), row.auth(), payload);
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Push для подписки id={} упал: {}", row.subscriptionId(), e.getMessage());
+        }
+        return PushResult.RETRYABLE;
+    }
+
+    private Progress progress(Integer flightId) {
+        synchronized (progressByFlight) {
+            return progressByFlight.computeIfAbsent(flightId, id -> new Progress());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        List<Map<String, Object>> flights = new ArrayList<>();
+        synchronized (progressByFlight) {
+            progressByFlight.forEach((flightId, progress) -> flights.add(0, progress.snapshot(flightId)));
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("inFlight", maxConcurrency - permits.availablePermits());
+        stats.put("waiting", permits.getQueueLength());
+        stats.put("flights", flights);
+        return stats;
+    }
+
+    /** Счётчики отправок по рейсу; заполняются из виртуальных потоков */
+    private static final class Progress {
+
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger gone = new AtomicInteger();
+        private volatile LocalDateTime lastSentAt;
+
+        private void record(PushResult result) {
+            switch (result) {
+                case DELIVERED -> sent.incrementAndGet();
+                case GONE -> gone.incrementAndGet();
+                default -> failed.incrementAndGet();
+            }
+            lastSentAt = LocalDateTime.now();
+        }
+
+        private Map<String, Object> snapshot(Integer flightId) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("flightId", flightId);
+            snapshot.put("sent", sent.get());
+            snapshot.put("failed", failed.get());
+            snapshot.put("gone", gone.get());
+            snapshot.put("lastSentAt", lastSentAt);
+            return snapshot;
+        }
+    }
+}
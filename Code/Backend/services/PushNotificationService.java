@@ -30,8 +30,9 @@ public class PushNotificationService {
 
     /**
      * Отправка push-уведомления через Web Push API с подробным логированием.
+     * Результат классифицирован по ответу: недоступные подписки (404/410) отличаются от временных ошибок.
      */
-    public boolean sendPush(String endpoint, String p256dh, String auth, String payload) {
+    public PushResult sendPush(String endpoint, String p256dh, String auth, String payload) {
         try {
             Notification notification = new Notification(endpoint, p256dh, auth, payload);
             var response = pushService.send(notification);
@@ -44,20 +45,25 @@ public class PushNotificationService {
             log.info("   ➤ Headers: {}", response.getAllHeaders().length > 0 ? response.getAllHeaders()[0] : "—");
 
             int statusCode = response.getStatusLine().getStatusCode();
+            PushResult result = PushResult.fromStatus(statusCode);
 
-            if (statusCode == 404) {
-                log.warn("❗️ Подписка недействительна (404). Клиент мог отписаться или endpoint устарел.");
-            } else if (statusCode >= 400) {
-                log.error("❌ Ошибка при отправке push. Код: {}", statusCode);
-            } else {
-                log.info("✅ Push доставлен успешно ({}).", statusCode);
+            switch (result) {
+                case GONE -> log.warn("❗️ Подписка недействительна ({}). Клиент мог отписаться или endpoint устарел.", statusCode);
+                case RETRYABLE -> log.warn("⏳ Push-сервис временно недоступен ({}), повторим позже.", statusCode);
+                case REJECTED -> log.error("❌ Ошибка при отправке push. Код: {}", statusCode);
+                case DELIVERED -> log.info("✅ Push доставлен успешно ({}).", statusCode);
             }
+            return result;
 
-            return statusCode >= 200 && statusCode < 300;
-
-        } catch (GeneralSecurityException | IOException | JoseException | ExecutionException | InterruptedException e) {
+        } catch (IOException | ExecutionException e) {
+            log.error("❌ Ошибка сети при отправке push: {}", e.getMessage(), e);
+            return PushResult.RETRYABLE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PushResult.RETRYABLE;
+        } catch (GeneralSecurityException | JoseException e) {
             log.error("❌ Ошибка при отправке push: {}", e.getMessage(), e);
-            return false;
+            return PushResult.REJECTED;
         }
     }
 }
@@ -0,0 +1,28 @@
+package com.example.lowflightzone.services;
+
+/**
+ * Итог одной push-отправки по ответу push-сервиса.
+ */
+public enum PushResult {
+    /** 2xx — принято push-сервисом */
+    DELIVERED,
+    /** 404/410 — подписка браузера больше не существует, повторять бессмысленно */
+    GONE,
+    /** 429, 5xx, сетевая ошибка — стоит повторить позже */
+    RETRYABLE,
+    /** Прочие 4xx и ошибки шифрования — повтор не поможет, но endpoint может быть жив */
+    REJECTED;
+
+    static PushResult fromStatus(int statusCode) {
+        if (statusCode >= 200 && statusCode < 300) {
+            return DELIVERED;
+        }
+        if (statusCode == 404 || statusCode == 410) {
+            return GONE;
+        }
+        if (statusCode == 429 || statusCode >= 500) {
+            return RETRYABLE;
+        }
+        return REJECTED;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.entity.Flight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики пересчёта рейсов в Micrometer и короткая история последних полных прогонов.
+ * <p>
+ * Таймеры flights.recalc.duration / .db / .compute и счётчики flights.recalc.scanned,
+ * flights.recalc.changed (тег status — итоговый статус), flights.recalc.skipped.
+ * Тег trigger: startup, sweep — полные прогоны; transitions — пачки из очереди переходов.
+ */
+@Component
+public class RecalculationMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final int historySize;
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+
+    public RecalculationMetrics(MeterRegistry meterRegistry,
+                                @Value("${flights.recalc.history-size:20}") int historySize) {
+        this.meterRegistry = meterRegistry;
+        this.historySize = Math.max(1, historySize);
+    }
+
+    void record(RecalculationRun run, boolean keepInHistory) {
+        if (run.outcome() == RecalculationRun.Outcome.SKIPPED) {
+            Counter.builder("flights.recalc.skipped")
+                    .description("Прогоны, пропущенные из-за ещё идущего предыдущего")
+                    .tag("trigger", run.trigger())
+                    .register(meterRegistry)
+                    .increment();
+        } else {
+            timer("flights.recalc.duration", "Длительность прогона пересчёта", run)
+                    .record(run.durationNanos(), TimeUnit.NANOSECONDS);
+            timer("flights.recalc.db", "Время в БД: чтение, запись, загрузка изменённых", run)
+                    .record(run.dbNanos(), TimeUnit.NANOSECONDS);
+            timer("flights.recalc.compute", "Время вычисления статусов в Java", run)
+                    .record(run.computeNanos(), TimeUnit.NANOSECONDS);
+            Counter.builder("flights.recalc.scanned")
+                    .tag("trigger", run.trigger())
+                    .tag("mode", run.mode())
+                    .register(meterRegistry)
+                    .increment(run.scanned());
+            for (Map.Entry<Flight.FlightStatus, Long> entry : run.changedByStatus().entrySet()) {
+                Counter.builder("flights.recalc.changed")
+                        .tag("trigger", run.trigger())
+                        .tag("mode", run.mode())
+                        .tag("status", entry.getKey().name())
+                        .register(meterRegistry)
+                        .increment(entry.getValue());
+            }
+        }
+
+        if (keepInHistory) {
+            synchronized (history) {
+                history.addFirst(run.snapshot());
+                while (history.size() > historySize) {
+                    history.removeLast();
+                }
+            }
+        }
+    }
+
+    /** Последние прогоны, новые первыми */
+    public List<Map<String, Object>> recentRuns() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    private Timer timer(String name, String description, RecalculationRun run) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("trigger", run.trigger())
+                .tag("mode", run.mode())
+                .register(meterRegistry);
+    }
+}
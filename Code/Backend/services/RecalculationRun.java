@@ -0,0 +1,155 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.entity.Flight;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики одного прогона пересчёта: диапазоны, просмотренные и изменённые рейсы
+ * (по итоговому статусу), время в БД и время вычислений. Заполняется параллельно
+ * из потоков пула, прогресс полного пересчёта логируется примерно каждые 10% диапазонов.
+ */
+@Slf4j
+final class RecalculationRun {
+
+    enum Outcome { RUNNING, FINISHED, SKIPPED }
+
+    private final String trigger;
+    private final String mode;
+    private final int totalChunks;
+    private final long startedAtNanos = System.nanoTime();
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    private final AtomicInteger completedChunks = new AtomicInteger();
+    private final AtomicInteger failedChunks = new AtomicInteger();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final LongAdder dbNanos = new LongAdder();
+    private final LongAdder computeNanos = new LongAdder();
+    private final Map<Flight.FlightStatus, LongAdder> changedByStatus = new ConcurrentHashMap<>();
+
+    private volatile Outcome outcome = Outcome.RUNNING;
+    private volatile LocalDateTime finishedAt;
+    private volatile long durationNanos;
+
+    RecalculationRun(String trigger, String mode, int totalChunks) {
+        this.trigger = trigger;
+        this.mode = mode;
+        this.totalChunks = totalChunks;
+    }
+
+    static RecalculationRun skipped(String trigger, String mode) {
+        RecalculationRun run = new RecalculationRun(trigger, mode, 0);
+        run.outcome = Outcome.SKIPPED;
+        run.finishedAt = run.startedAt;
+        return run;
+    }
+
+    void chunkCompleted() {
+        int done = completedChunks.incrementAndGet() + failedChunks.get();
+        int step = Math.max(1, totalChunks / 10);
+        if (totalChunks > 1 && done % step == 0 && done < totalChunks) {
+            log.info("⏳ Пересчёт рейсов: {}/{} диапазонов, просмотрено {}, изменено {}",
+                    done, totalChunks, scanned.get(), changed.get());
+        }
+    }
+
+    void chunkFailed() {
+        failedChunks.incrementAndGet();
+    }
+
+    void addScanned(long count) {
+        scanned.addAndGet(count);
+    }
+
+    void addChanged(Flight.FlightStatus status) {
+        changed.incrementAndGet();
+        changedByStatus.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    /** Расхождение SQL-режима с Java-правилами (flights.recalc.verify-sql) */
+    void addMismatch() {
+        mismatches.incrementAndGet();
+    }
+
+    void addDbNanos(long nanos) {
+        dbNanos.add(nanos);
+    }
+
+    void addComputeNanos(long nanos) {
+        computeNanos.add(nanos);
+    }
+
+    void finish() {
+        durationNanos = System.nanoTime() - startedAtNanos;
+        finishedAt = LocalDateTime.now();
+        outcome = Outcome.FINISHED;
+    }
+
+    String trigger() {
+        return trigger;
+    }
+
+    String mode() {
+        return mode;
+    }
+
+    Outcome outcome() {
+        return outcome;
+    }
+
+    long durationNanos() {
+        return durationNanos;
+    }
+
+    long dbNanos() {
+        return dbNanos.sum();
+    }
+
+    long computeNanos() {
+        return computeNanos.sum();
+    }
+
+    long scanned() {
+        return scanned.get();
+    }
+
+    Map<Flight.FlightStatus, Long> changedByStatus() {
+        Map<Flight.FlightStatus, Long> result = new TreeMap<>();
+        changedByStatus.forEach((status, count) -> result.put(status, count.sum()));
+        return result;
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("status", outcome);
+        snapshot.put("trigger", trigger);
+        snapshot.put("mode", mode);
+        snapshot.put("startedAt", startedAt);
+        snapshot.put("finishedAt", finishedAt);
+        snapshot.put("totalChunks", totalChunks);
+        snapshot.put("completedChunks", completedChunks.get());
+        snapshot.put("failedChunks", failedChunks.get());
+        snapshot.put("scanned", scanned.get());
+        snapshot.put("changed", changed.get());
+        snapshot.put("changedByStatus", changedByStatus());
+        if (mismatches.get() > 0) {
+            snapshot.put("sqlMismatches", mismatches.get());
+        }
+        if (outcome == Outcome.FINISHED) {
+            snapshot.put("durationMillis", durationNanos / 1_000_000);
+            snapshot.put("dbMillis", dbNanos.sum() / 1_000_000);
+            snapshot.put("computeMillis", computeNanos.sum() / 1_000_000);
+        }
+        return snapshot;
+    }
+}
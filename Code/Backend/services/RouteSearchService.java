@@ -0,0 +1,215 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.dto.ItineraryDto;
+import com.example.lowflightzone.exceptions.ValidationException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Поиск стыковочных маршрутов по расписанию в памяти.
+ * <p>
+ * Time-dependent Dijkstra: метки (аэропорт, время прибытия) извлекаются в порядке прибытия,
+ * из аэропорта берутся только вылеты в окне [прибытие + min стыковка, старт + max длительность].
+ * Первые {@code limit} меток, дошедших до пункта назначения, — маршруты с самым ранним прилётом.
+ * <p>
+ * Очередь ограничена отсечением доминируемых меток: метка в аэропорту не нужна, если там уже
+ * раскрыто {@code limit} меток, которые прилетели не позже, вылетели из пункта отправления
+ * не раньше и сделали не больше плеч, — любое её продолжение есть и у них.
+ * Дополнительно поиск прекращается, если очередь всё же разрослась до {@link #MAX_QUEUED_LABELS}.
+ */
+@Service
+@RequiredArgsConstructor
+public class RouteSearchService {
+
+    public static final int MAX_STOPS = 2;
+    private static final int MAX_EXPANDED_LABELS = 200_000;
+    private static final int MAX_QUEUED_LABELS = 100_000;
+
+    private final FlightScheduleIndex scheduleIndex;
+    private final AirportCatalog airportCatalog;
+
+    public List<ItineraryDto> findItineraries(String from,
+                                              String to,
+                                              LocalDateTime departAfter,
+                                              Duration departureWindow,
+                                              int maxStops,
+                                              Duration minConnection,
+                                              Duration maxDuration,
+                                              int limit) {
+        if (from == null || to == null || from.equalsIgnoreCase(to)) {
+            throw new ValidationException("Нужно указать разные аэропорты вылета и прибытия");
+        }
+        if (maxStops < 0 || maxStops > MAX_STOPS) {
+            throw new ValidationException("Допустимо от 0 до " + MAX_STOPS + " пересадок");
+        }
+        String origin = from.toUpperCase();
+        String destination = to.toUpperCase();
+
+        PriorityQueue<Label> queue = new PriorityQueue<>(Comparator
+                .comparing((Label l) -> l.leg.arrival())
+                .thenComparingInt(l -> l.legCount));
+
+        // 🛫 Стартовые метки: все вылеты из пункта отправления в окне
+        for (ScheduledLeg leg : scheduleIndex.departuresBetween(origin, departAfter, departAfter.plus(departureWindow))) {
+            if (!leg.isCancelled()
+                    && !leg.arrivalIata().equals(origin)
+                    && withinDuration(leg.departure(), leg.arrival(), maxDuration)) {
+                queue.add(new Label(leg, null, 1));
+            }
+        }
+
+        List<ItineraryDto> result = new ArrayList<>();
+        Frontier frontier = new Frontier(Math.max(1, limit));
+        int expanded = 0;
+        while (!queue.isEmpty() && result.size() < limit
+                && expanded < MAX_EXPANDED_LABELS && queue.size() < MAX_QUEUED_LABELS) {
+            Label label = queue.poll();
+
+            if (label.leg.arrivalIata().equals(destination)) {
+                result.add(toItinerary(label));
+                continue;
+            }
+            if (label.legCount > maxStops || frontier.dominates(label)) {
+                continue;
+            }
+            frontier.add(label);
+            expanded++;
+
+            LocalDateTime earliest = label.leg.arrival().plus(minConnection);
+            LocalDateTime latest = label.start.plus(maxDuration);
+            for (ScheduledLeg next : scheduleIndex.departuresBetween(label.leg.arrivalIata(), earliest, latest)) {
+                if (!next.isCancelled()
+                        && withinDuration(label.start, next.arrival(), maxDuration)
+                        && !label.visits(next.arrivalIata())) {
+                    Label extended = new Label(next, label, label.legCount + 1);
+                    // раскрытые метки прилетели не позже новой — отсекаем её сразу, не раздувая очередь
+                    if (!frontier.dominates(extended)) {
+                        queue.add(extended);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean withinDuration(LocalDateTime start, LocalDateTime end, Duration maxDuration) {
+        return !end.isBefore(start) && !Duration.between(start, end).minus(maxDuration).isPositive();
+    }
+
+    private ItineraryDto toItinerary(Label last) {
+        Deque<ScheduledLeg> legs = new ArrayDeque<>();
+        for (Label l = last; l != null; l = l.previous) {
+            legs.addFirst(l.leg);
+        }
+
+        List<FlightDto> legDtos = new ArrayList<>(legs.size());
+        List<Long> connections = new ArrayList<>();
+        ScheduledLeg previous = null;
+        for (ScheduledLeg leg : legs) {
+            legDtos.add(leg.toFlightDto(airportCatalog));
+            if (previous != null) {
+                connections.add(Duration.between(previous.arrival(), leg.departure()).toMinutes());
+            }
+            previous = leg;
+        }
+
+        ItineraryDto dto = new ItineraryDto();
+        dto.setLegs(legDtos);
+        dto.setStops(legs.size() - 1);
+        dto.setDeparture(legs.getFirst().departure());
+        dto.setArrival(legs.getLast().arrival());
+        dto.setTotalDurationMinutes(Duration.between(dto.getDeparture(), dto.getArrival()).toMinutes());
+        dto.setConnectionMinutes(connections.isEmpty() ? null : connections);
+        return dto;
+    }
+
+    /** Метка поиска: последнее плечо + ссылка на предыдущую метку (путь без копирования) */
+    private static final class Label {
+        private final ScheduledLeg leg;
+        private final Label previous;
+        private final int legCount;
+        /** Вылет первого плеча */
+        private final LocalDateTime start;
+
+        private Label(ScheduledLeg leg, Label previous, int legCount) {
+            this.leg = leg;
+            this.previous = previous;
+            this.legCount = legCount;
+            this.start = previous != null ? previous.start : leg.departure();
+        }
+
+        private boolean visits(String iata) {
+            for (Label l = this; l != null; l = l.previous) {
+                if (l.leg.departureIata().equals(iata) || l.leg.arrivalIata().equals(iata)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Раскрытые метки по аэропорту и числу плеч: хранятся только {@code limit} самых поздних
+     * вылетов из пункта отправления. Метки извлекаются по времени прилёта, поэтому все раскрытые
+     * прилетели не позже проверяемой.
+     */
+    private static final class Frontier {
+        private final int limit;
+        private final Map<String, List<List<LocalDateTime>>> startsByAirport = new HashMap<>();
+
+        private Frontier(int limit) {
+            this.limit = limit;
+        }
+
+        private boolean dominates(Label label) {
+            List<List<LocalDateTime>> byLegCount = startsByAirport.get(label.leg.arrivalIata());
+            if (byLegCount == null) {
+                return false;
+            }
+            int dominating = 0;
+            for (int legs = 1; legs <= Math.min(label.legCount, byLegCount.size() - 1); legs++) {
+                for (LocalDateTime start : byLegCount.get(legs)) {
+                    if (start.isBefore(label.start)) {
+                        break;
+                    }
+                    if (++dominating >= limit) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void add(Label label) {
+            List<List<LocalDateTime>> byLegCount = startsByAirport.computeIfAbsent(label.leg.arrivalIata(),
+                    airport -> new ArrayList<>());
+            while (byLegCount.size() <= label.legCount) {
+                byLegCount.add(new ArrayList<>());
+            }
+            // по убыванию вылета, не больше limit
+            List<LocalDateTime> starts = byLegCount.get(label.legCount);
+            int position = 0;
+            while (position < starts.size() && !starts.get(position).isBefore(label.start)) {
+                position++;
+            }
+            if (position < limit) {
+                starts.add(position, label.start);
+                if (starts.size() > limit) {
+                    starts.removeLast();
+                }
+            }
+        }
+    }
+}
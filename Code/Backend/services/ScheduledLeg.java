@@ -0,0 +1,82 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.dto.FlightDto;
+import com.example.lowflightzone.entity.Flight;
+import com.example.lowflightzone.repositories.FlightRow;
+
+import java.time.LocalDateTime;
+
+/**
+ * Неизменяемый снимок рейса для расписаний в памяти (граф маршрутов, табло).
+ * Эффективное время — расчётное, если оно есть, иначе плановое.
+ */
+public record ScheduledLeg(
+        Integer flightId,
+        String flightNumber,
+        String airline,
+        String departureIata,
+        String arrivalIata,
+        LocalDateTime scheduledDeparture,
+        LocalDateTime scheduledArrival,
+        LocalDateTime estimatedDeparture,
+        LocalDateTime estimatedArrival,
+        Flight.FlightStatus status
+) {
+
+    public static ScheduledLeg of(Flight flight) {
+        return new ScheduledLeg(
+                flight.getId(),
+                flight.getFlightNumber(),
+                flight.getAirline(),
+                flight.getDepartureAirport() != null ? flight.getDepartureAirport().getIataCode() : null,
+                flight.getArrivalAirport() != null ? flight.getArrivalAirport().getIataCode() : null,
+                flight.getScheduledDeparture(),
+                flight.getScheduledArrival(),
+                flight.getEstimatedDeparture(),
+                flight.getEstimatedArrival(),
+                flight.getStatus());
+    }
+
+    public static ScheduledLeg of(FlightRow row) {
+        return new ScheduledLeg(
+                row.id(),
+                row.flightNumber(),
+                row.airline(),
+                row.departureIata(),
+                row.arrivalIata(),
+                row.scheduledDeparture(),
+                row.scheduledArrival(),
+                row.estimatedDeparture(),
+                row.estimatedArrival(),
+                row.status());
+    }
+
+    public LocalDateTime departure() {
+        return estimatedDeparture != null ? estimatedDeparture : scheduledDeparture;
+    }
+
+    public LocalDateTime arrival() {
+        return estimatedArrival != null ? estimatedArrival : scheduledArrival;
+    }
+
+    public boolean isCancelled() {
+        return status == Flight.FlightStatus.CANCELLED;
+    }
+
+    /** Краткий FlightDto для табло и маршрутов; аэропорты — общие экземпляры справочника */
+    public FlightDto toFlightDto(AirportCatalog airportCatalog) {
+        FlightDto dto = new FlightDto();
+        dto.setId(flightId);
+        dto.setFlightNumber(flightNumber);
+        dto.setAirline(airline);
+        dto.setDepartureAirport(airportCatalog.resolve(departureIata));
+        dto.setArrivalAirport(airportCatalog.resolve(arrivalIata));
+
+        dto.setScheduledDeparture(scheduledDeparture);
+        dto.setScheduledArrival(scheduledArrival);
+        dto.setEstimatedDeparture(estimatedDeparture);
+        dto.setEstimatedArrival(estimatedArrival);
+        dto.setStatus(status != null ? status.toString() : null);
+        return dto;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.lowflightzone.services;
+
+import com.example.lowflightzone.events.ShardsAcquiredEvent;
+import com.example.lowflightzone.repositories.SchedulerLockRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Распределение фоновой работы между узлами через таблицу аренд scheduler_locks.
+ * <p>
+ * Работа по рейсам делится на scheduler.shards шардов (по блокам id, см.
+ * {@link FlightRecalculationService#owns}); шард — отдельная аренда flights-recalc-N.
+ * Каждые scheduler.lease.renew-ms узел продлевает свои аренды и забирает истёкшие,
+ * не больше scheduler.lease.max-shards-per-node. Владелец шарда 0 — лидер для одиночных задач.
+ * Упавший узел теряет аренду через scheduler.lease.ttl-ms, её забирает следующий тик другого узла.
+ * <p>
+ * Таблица вместо advisory-блокировок — одинаково работает на PostgreSQL и H2.
+ * Время аренды считается по часам узлов: предполагается синхронизация NTP.
+ * <p>
+ * Продление идёт в собственном потоке scheduler-leases, а не в общем пуле {@code @Scheduled}:
+ * долгий пересчёт или разбор outbox не должен задержать продление дольше TTL.
+ */
+@Slf4j
+@Component
+public class SchedulerLeases {
+
+    private static final String SHARD_LOCK_PREFIX = "flights-recalc-";
+
+    private final SchedulerLockRepository lockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int shardCount;
+    private final int maxShardsPerNode;
+    private final long ttlMillis;
+    private final long renewMillis;
+    private final String owner;
+    private final ScheduledExecutorService renewer;
+
+    /** Шард → момент (System.nanoTime), до которого аренда точно наша */
+    private final Map<Integer, Long> ownedUntilNanos = new ConcurrentHashMap<>();
+
+    public SchedulerLeases(SchedulerLockRepository lockRepository, TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${scheduler.shards:1}") int shardCount,
+                           @Value("${scheduler.lease.max-shards-per-node:0}") int maxShardsPerNode,
+                           @Value("${scheduler.lease.ttl-ms:15000}") long ttlMillis,
+                           @Value("${scheduler.lease.renew-ms:5000}") long renewMillis) {
+        this.lockRepository = lockRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.shardCount = Math.max(1, shardCount);
+        this.maxShardsPerNode = maxShardsPerNode > 0 ? maxShardsPerNode : this.shardCount;
+        this.ttlMillis = Math.max(1000, ttlMillis);
+        this.renewMillis = Math.max(100, renewMillis);
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+        this.renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scheduler-leases");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void startRenewal() {
+        renewer.scheduleWithFixedDelay(() -> {
+            try {
+                renew();
+            } catch (RuntimeException e) {
+                log.warn("⚠️ Ошибка продления аренд: {}", e.getMessage());
+            }
+        }, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Вызывается потоком scheduler-leases и один раз при прогреве — не параллельно */
+    public synchronized void renew() {
+        Set<Integer> acquired = new TreeSet<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            boolean wasOwned = ownedUntilNanos.containsKey(shard);
+            if (!wasOwned && ownedUntilNanos.size() >= maxShardsPerNode) {
+                continue;
+            }
+            long started = System.nanoTime();
+            boolean owned;
+            try {
+                owned = tryAcquire(SHARD_LOCK_PREFIX + shard);
+            } catch (RuntimeException e) {
+                // БД недоступна — аренда доживёт до своего срока по локальным часам
+                log.warn("⚠️ Не удалось продлить аренду шарда {}: {}", shard, e.getMessage());
+                continue;
+            }
+
+            if (owned) {
+                ownedUntilNanos.put(shard, started + TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+                if (!wasOwned) {
+                    acquired.add(shard);
+                }
+            } else if (wasOwned) {
+                ownedUntilNanos.remove(shard);
+                log.warn("🔓 Аренда шарда {} потеряна", shard);
+            }
+        }
+
+        if (!acquired.isEmpty()) {
+            log.info("🔐 Узел {} получил шарды {} из {}", owner, acquired, shardCount);
+            eventPublisher.publishEvent(new ShardsAcquiredEvent(acquired));
+        }
+    }
+
+    /** Аренда действительна, пока не истёк её срок по локальным часам — даже если продление задерживается */
+    public boolean ownsShard(int shard) {
+        Long until = ownedUntilNanos.get(shard);
+        return until != null && until - System.nanoTime() > 0;
+    }
+
+    /** Лидер — владелец шарда 0: он выполняет задачи, которым достаточно одного узла */
+    public boolean isLeader() {
+        return ownsShard(0);
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public Map<String, Object> stats() {
+        Set<Integer> owned = new TreeSet<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (ownsShard(shard)) {
+                owned.add(shard);
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("owner", owner);
+        stats.put("leader", isLeader());
+        stats.put("shardCount", shardCount);
+        stats.put("ownedShards", owned);
+        stats.put("ttlMillis", ttlMillis);
+        return stats;
+    }
+
+    /** При штатной остановке отдаём аренды сразу, не дожидаясь TTL */
+    @PreDestroy
+    public synchronized void releaseAll() {
+        renewer.shutdownNow();
+        LocalDateTime now = LocalDateTime.now();
+        for (Integer shard : ownedUntilNanos.keySet()) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        lockRepository.release(SHARD_LOCK_PREFIX + shard, owner, now));
+            } catch (RuntimeException e) {
+                log.warn("⚠️ Не удалось освободить аренду шарда {}: {}", shard, e.getMessage());
+            }
+        }
+        ownedUntilNanos.clear();
+    }
+
+    private boolean tryAcquire(String name) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        Integer updated = transactionTemplate.execute(status ->
+                lockRepository.renewOrTakeOver(name, owner, now, expiresAt));
+        if (updated != null && updated > 0) {
+            return true;
+        }
+        if (lockRepository.existsById(name)) {
+            return false;
+        }
+
+        // Строки ещё нет — создаём; при гонке выигрывает один узел
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    lockRepository.insert(name, owner, now, expiresAt));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+}
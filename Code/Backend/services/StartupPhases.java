@@ -0,0 +1,101 @@
+package com.example.lowflightzone.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Фазы старта приложения и состояние прогрева.
+ * <p>
+ * Контекст поднимается без тяжёлой работы; справочник и индексы строятся на ApplicationReadyEvent,
+ * а первичный пересчёт рейсов идёт в фоне. Пока не записана каждая из {@link #WARM_UP_PHASES}
+ * (в том числе с ошибкой) — состояние WARMING, и /health/ready отвечает 503.
+ * Длительности фаз видны в /health/startup.
+ */
+@Slf4j
+@Component
+public class StartupPhases {
+
+    public enum State { WARMING, READY }
+
+    /** Фазы прогрева, без которых узел не принимает трафик */
+    static final Set<String> WARM_UP_PHASES =
+            Set.of("airportReferenceData", "flightIndexes", "initialRecalculation");
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private volatile State state = State.WARMING;
+    private volatile LocalDateTime readyAt;
+
+    /** Время подъёма контекста, включая CommandLineRunner'ы (DataInitializer) */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (event.getTimeTaken() != null) {
+            record("context", event.getTimeTaken().toMillis(), null);
+        }
+    }
+
+    public void time(String name, Runnable action) {
+        long started = System.currentTimeMillis();
+        try {
+            action.run();
+            record(name, System.currentTimeMillis() - started, null);
+        } catch (RuntimeException e) {
+            record(name, System.currentTimeMillis() - started, e.getMessage());
+            throw e;
+        }
+    }
+
+    public void record(String name, long durationMillis) {
+        record(name, durationMillis, null);
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", state);
+        snapshot.put("readyAt", readyAt);
+        snapshot.put("phases", phasesSnapshot());
+        return snapshot;
+    }
+
+    private synchronized void record(String name, long durationMillis, String error) {
+        phases.put(name, new Phase(name, durationMillis, LocalDateTime.now(), error));
+        if (state == State.WARMING && phases.keySet().containsAll(WARM_UP_PHASES)) {
+            markReady();
+        }
+    }
+
+    /** Прогрев закончен (в том числе с ошибкой — данные догонит страховочный проход) */
+    private void markReady() {
+        readyAt = LocalDateTime.now();
+        state = State.READY;
+        log.info("✅ Прогрев завершён: {}", phases.values());
+    }
+
+    private synchronized List<Phase> phasesSnapshot() {
+        return new ArrayList<>(phases.values());
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Phase(String name, long durationMillis, LocalDateTime finishedAt, String error) {
+    }
+}